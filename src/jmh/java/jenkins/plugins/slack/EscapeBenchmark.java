@@ -0,0 +1,36 @@
+package jenkins.plugins.slack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of {@link ActiveNotifier.MessageBuilder#escape(String)} for text that needs no escaping, the common case,
+ * and for text full of markup.
+ */
+@State(Scope.Benchmark)
+public class EscapeBenchmark {
+
+    private ActiveNotifier.MessageBuilder builder;
+    private String plain;
+    private String markup;
+
+    @Setup
+    public void setUp() {
+        builder = new ActiveNotifier.MessageBuilder(SyntheticBuilds.notifier(),
+                SyntheticBuilds.context(SyntheticBuilds.build(0)));
+        plain = "Checkout Web API stable - #42 Still Failing after 3 min 12 sec";
+        markup = "Checkout / Web & API <stable> - #42 <@U024BE7LH> & <!channel> fix <flaky> tests";
+    }
+
+    @Benchmark
+    public String plain() {
+        return builder.escape(plain);
+    }
+
+    @Benchmark
+    public String markup() {
+        return builder.escape(markup);
+    }
+}
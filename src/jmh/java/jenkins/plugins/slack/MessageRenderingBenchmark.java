@@ -0,0 +1,52 @@
+package jenkins.plugins.slack;
+
+import hudson.model.AbstractBuild;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cost of rendering the notification text of a completed build with {@code changes} changelog entries.
+ */
+@State(Scope.Benchmark)
+public class MessageRenderingBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int changes;
+
+    private ActiveNotifier notifier;
+    private BuildContext context;
+
+    @Setup
+    public void setUp() {
+        // every entry is logged at INFO, measure the rendering rather than the console
+        Logger.getLogger(ActiveNotifier.class.getName()).setLevel(Level.WARNING);
+        notifier = new ActiveNotifier(SyntheticBuilds.notifier(), SyntheticBuilds.listener());
+        AbstractBuild<?, ?> build = SyntheticBuilds.build(changes);
+        context = SyntheticBuilds.context(build);
+    }
+
+    @Benchmark
+    public String buildStatusMessage() {
+        return notifier.getBuildStatusMessage(context, false, false);
+    }
+
+    @Benchmark
+    public String commitList() {
+        ActiveNotifier.clearCommitLists();
+        return notifier.getCommitList(context);
+    }
+
+    /**
+     * What the other downstream builds of a fan-out pay.
+     */
+    @Benchmark
+    public String cachedCommitList() {
+        return notifier.getCommitList(context);
+    }
+}
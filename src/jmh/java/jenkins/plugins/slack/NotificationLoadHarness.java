@@ -0,0 +1,234 @@
+package jenkins.plugins.slack;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives synthetic completed builds through {@link ActiveNotifier#completed} into a {@link FakeSlackServer} and
+ * reports throughput, end to end latency, drops and duplicates.
+ *
+ * Not a unit test, run it with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=jenkins.plugins.slack.NotificationLoadHarness -Dexec.classpathScope=test
+ * </pre>
+ * and shape the load with system properties, e.g. {@code -Devents=20000 -DerrorRate=0.05 -DslackRateLimit=50}:
+ * <dl>
+ * <dt>events, eventsPerSecond</dt><dd>how many builds complete, and how fast (0 for as fast as possible)</dd>
+ * <dt>projects, rooms</dt><dd>how many projects the builds belong to, and channels each project notifies</dd>
+ * <dt>minLatency, maxLatency</dt><dd>milliseconds the fake webhook takes to answer</dd>
+ * <dt>errorRate</dt><dd>share of posts answered 500</dd>
+ * <dt>slackRateLimit</dt><dd>posts per second the fake webhook takes before answering 429, 0 for no limit</dd>
+ * <dt>rateLimit, rateLimitBurst</dt><dd>the plugin's own rate limit, per webhook</dd>
+ * <dt>transport</dt><dd>httpclient or async</dd>
+ * <dt>timeout</dt><dd>seconds to wait for the last deliveries</dd>
+ * </dl>
+ * Every project has its own webhook token, so the plugin's rate limit and circuit breaker apply per project.
+ */
+public class NotificationLoadHarness {
+
+    private static final int EVENTS = Integer.getInteger("events", 5000);
+    private static final int EVENTS_PER_SECOND = Integer.getInteger("eventsPerSecond", 500);
+    private static final int PROJECTS = Integer.getInteger("projects", 50);
+    private static final int ROOMS = Integer.getInteger("rooms", 2);
+    private static final int MIN_LATENCY_MILLIS = Integer.getInteger("minLatency", 20);
+    private static final int MAX_LATENCY_MILLIS = Integer.getInteger("maxLatency", 200);
+    private static final double ERROR_RATE = Double.parseDouble(System.getProperty("errorRate", "0.01"));
+    private static final int SLACK_RATE_LIMIT = Integer.getInteger("slackRateLimit", 0);
+    private static final double RATE_LIMIT = Double.parseDouble(System.getProperty("rateLimit", "100"));
+    private static final int RATE_LIMIT_BURST = Integer.getInteger("rateLimitBurst", 20);
+    private static final String TRANSPORT = System.getProperty("transport", SlackTransport.DEFAULT);
+    private static final int TIMEOUT_SECONDS = Integer.getInteger("timeout", 120);
+
+    private static final Pattern EVENT_ID = Pattern.compile("load-event-(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        Logger.getLogger("jenkins.plugins.slack").setLevel(Level.SEVERE);
+        RateLimiter.configure(RATE_LIMIT, RATE_LIMIT_BURST);
+        RetryPolicy.set(new RetryPolicy(RetryPolicy.DEFAULT_MAX_ATTEMPTS, 100, 5000, new Random()));
+        SlackTransport.configure(TRANSPORT);
+        SlackServiceRegistry.invalidate();
+
+        final FakeSlackServer server = new FakeSlackServer(new Random(42));
+        server.setLatency(MIN_LATENCY_MILLIS, MAX_LATENCY_MILLIS);
+        server.setErrorRate(ERROR_RATE, 500);
+        server.setRateLimit(SLACK_RATE_LIMIT, 1);
+
+        File root = createDirectory();
+        long[] completedAt = new long[EVENTS];
+        NotificationDispatcher dispatcher = NotificationDispatcher.get();
+        long droppedBefore = dispatcher.getDroppedCount();
+        try {
+            SlackNotifier notifier = new SlackNotifier("load", "token", "#load", "https://jenkins.example.com/", null) {
+                @Override
+                public SlackService newSlackService(String teamDomain, String token, String projectRoom) {
+                    return server.newService(teamDomain, token, projectRoom);
+                }
+            };
+            ActiveNotifier activeNotifier = new ActiveNotifier(notifier, listener());
+            List<AbstractProject> projects = projects(root);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                if (EVENTS_PER_SECOND > 0) {
+                    long due = start + TimeUnit.SECONDS.toNanos(i) / EVENTS_PER_SECOND;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+                AbstractBuild build = build(projects.get(i % PROJECTS), i);
+                completedAt[i] = System.nanoTime();
+                activeNotifier.completed(build);
+            }
+            long submitted = System.nanoTime() - start;
+
+            long expected = (long) EVENTS * ROOMS;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (server.getPayloads().size() < expected - (dispatcher.getDroppedCount() - droppedBefore) * ROOMS
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            report(server, completedAt, submitted, elapsed, dispatcher.getDroppedCount() - droppedBefore);
+        } finally {
+            server.stop();
+            SlackTransport.set(new HttpClientTransport());
+            delete(root);
+        }
+    }
+
+    private static void report(FakeSlackServer server, long[] completedAt, long submitted, long elapsed, long dropped) {
+        List<JSONObject> payloads = server.getPayloads();
+        List<Long> arrivals = server.getArrivals();
+        Map<String, Integer> deliveries = new HashMap<String, Integer>();
+        List<Long> latencies = new ArrayList<Long>(payloads.size());
+        int duplicates = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            JSONObject payload = payloads.get(i);
+            Matcher id = EVENT_ID.matcher(payload.getJSONArray("attachments").getJSONObject(0).getString("fallback"));
+            if (!id.find()) {
+                continue;
+            }
+            String key = id.group(1) + payload.getString("channel");
+            Integer count = deliveries.get(key);
+            if (count != null) {
+                duplicates++;
+                deliveries.put(key, count + 1);
+                continue;
+            }
+            deliveries.put(key, 1);
+            latencies.add(arrivals.get(i) - completedAt[Integer.parseInt(id.group(1))]);
+        }
+        Collections.sort(latencies);
+
+        long expected = (long) EVENTS * ROOMS;
+        System.out.println(String.format("%d events to %d projects x %d rooms, transport %s", EVENTS, PROJECTS, ROOMS, TRANSPORT));
+        System.out.println(String.format("submitted in %.2fs, delivered in %.2fs = %.1f posts/sec",
+                submitted / 1e9, elapsed / 1e9, deliveries.size() / (elapsed / 1e9)));
+        System.out.println(String.format("delivered %d of %d, dropped by the dispatcher %d events, missing %d, duplicates %d",
+                deliveries.size(), expected, dropped, expected - deliveries.size(), duplicates));
+        System.out.println(String.format("webhook requests %d, answered 429 %d", server.getRequestCount(), server.getRateLimitedCount()));
+        System.out.println(String.format("latency ms p50 %d, p95 %d, p99 %d, p99.9 %d, max %d",
+                percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                percentile(latencies, 99.9), percentile(latencies, 100)));
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+    }
+
+    private static BuildListener listener() {
+        BuildListener listener = mock(BuildListener.class, SyntheticBuilds.stubOnly());
+        when(listener.getLogger()).thenReturn(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        return listener;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static List<AbstractProject> projects(File root) throws IOException {
+        StringBuilder rooms = new StringBuilder();
+        for (int i = 0; i < ROOMS; i++) {
+            rooms.append(i > 0 ? "," : "").append("#load-").append(i);
+        }
+        List<AbstractProject> projects = new ArrayList<AbstractProject>(PROJECTS);
+        for (int i = 0; i < PROJECTS; i++) {
+            SlackNotifier.SlackJobProperty property = new SlackNotifier.SlackJobProperty("load", "token-" + i,
+                    rooms.toString(), false, false, true, false, false, false, false, true, false, false, false, null);
+            File directory = new File(root, "load-" + i);
+            if (!directory.mkdir()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            AbstractProject project = mock(AbstractProject.class, SyntheticBuilds.stubOnly());
+            when(project.getName()).thenReturn("load-" + i);
+            when(project.getFullName()).thenReturn("load-" + i);
+            when(project.getFullDisplayName()).thenReturn("load-" + i);
+            when(project.getRootDir()).thenReturn(directory);
+            when(project.getProperty(SlackNotifier.SlackJobProperty.class)).thenReturn(property);
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static AbstractBuild build(AbstractProject project, int event) {
+        AbstractBuild build = mock(AbstractBuild.class, SyntheticBuilds.stubOnly());
+        // getProject() is final and returns getParent()
+        when(build.getParent()).thenReturn(project);
+        when(build.getNumber()).thenReturn(event + 1);
+        when(build.getExternalizableId()).thenReturn(project.getFullName() + "#" + (event + 1));
+        when(build.getDisplayName()).thenReturn("load-event-" + event);
+        when(build.getFullDisplayName()).thenReturn(project.getFullName() + " load-event-" + event);
+        when(build.getResult()).thenReturn(Result.FAILURE);
+        when(build.getDurationString()).thenReturn("1 min");
+        when(build.getUrl()).thenReturn("job/" + project.getFullName() + "/" + (event + 1) + "/");
+        return build;
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("slack-load", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
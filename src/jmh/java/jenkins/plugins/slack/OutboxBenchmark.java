@@ -0,0 +1,91 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cost of journaling a notification of {@code messageLength} characters in the {@link Outbox}, and of having it
+ * acknowledged, with a sender that accepts everything immediately, so the numbers are the cost of the outbox itself.
+ *
+ * Pass {@code -Ddir=...} (in {@code -Djmh.args="-jvmArgs -Ddir=..."}) to measure a particular disk, by default the
+ * outbox lives in the temp directory.
+ */
+@State(Scope.Benchmark)
+public class OutboxBenchmark {
+
+    @Param({"500"})
+    public int messageLength;
+
+    private File directory;
+    private Outbox outbox;
+    private List<SlackMessage> messages;
+    private int appended;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = createDirectory();
+        outbox = Outbox.open(directory, new Outbox.Sender() {
+            public ListenableFuture<Boolean> send(OutboxEntry entry) {
+                SettableFuture<Boolean> sent = SettableFuture.create();
+                sent.set(true);
+                return sent;
+            }
+        }, Outbox.SEGMENT_BYTES);
+
+        StringBuilder text = new StringBuilder(messageLength);
+        while (text.length() < messageLength) {
+            text.append("benchmark ");
+        }
+        messages = Collections.singletonList(new SlackMessage(text.substring(0, messageLength), "good"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        outbox.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void append() throws IOException {
+        outbox.append(entry());
+    }
+
+    @Benchmark
+    public void appendAndAcknowledge() throws IOException {
+        long acknowledged = outbox.getAcknowledgedCount();
+        outbox.append(entry());
+        while (outbox.getAcknowledgedCount() == acknowledged) {
+            Thread.yield();
+        }
+    }
+
+    private OutboxEntry entry() {
+        return new OutboxEntry("bench", "token", "#bench-" + (appended++ % 16), messages);
+    }
+
+    private static File createDirectory() throws IOException {
+        File parent = new File(System.getProperty("dir", System.getProperty("java.io.tmpdir")));
+        File directory = File.createTempFile("slack-outbox", "", parent);
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        return directory;
+    }
+}
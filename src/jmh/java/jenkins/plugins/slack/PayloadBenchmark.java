@@ -0,0 +1,64 @@
+package jenkins.plugins.slack;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of turning {@code messages} messages into the JSON body posted by {@link StandardSlackService}, written
+ * to a stream the way the HTTP client sends it.
+ */
+@State(Scope.Benchmark)
+public class PayloadBenchmark {
+
+    @Param({"1", "10"})
+    public int messages;
+
+    @Param({"200", "10000"})
+    public int messageLength;
+
+    private List<SlackMessage> batch;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder(messageLength);
+        while (text.length() < messageLength) {
+            text.append("Fix \"flaky\" test\t[Author]\n- ");
+        }
+        batch = new ArrayList<SlackMessage>();
+        for (int i = 0; i < messages; i++) {
+            batch.add(new SlackMessage(text.substring(0, messageLength), i % 2 == 0 ? "good" : "danger"));
+        }
+    }
+
+    @Benchmark
+    public void payload(Blackhole blackhole) throws IOException {
+        new JsonPayload("#bench", JsonPayload.attachments(batch)).writeRequest(new BlackholeOutputStream(blackhole));
+    }
+
+    private static class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.plugins.slack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cost of a post through the pooled {@link StandardSlackService} against the previous behaviour of building a new
+ * {@link HttpClient} for every post, to a local stub webhook endpoint.
+ *
+ * The stub speaks plain HTTP, so the numbers understate the gain against Slack where every new connection also
+ * pays a TLS handshake.
+ */
+@State(Scope.Benchmark)
+public class StandardSlackServiceBenchmark {
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private StandardSlackService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        Logger.getLogger(StandardSlackService.class.getName()).setLevel(Level.WARNING);
+        // measure the HTTP path, not the webhook rate limit
+        RateLimiter.configure(Double.MAX_VALUE, Integer.MAX_VALUE);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new OkHandler());
+        serverThreads = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverThreads);
+        server.start();
+
+        service = new StandardSlackService("bench", "token", "#bench");
+        service.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/services/hooks/jenkins-ci");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean pooled() {
+        return service.publish("benchmark message", "good");
+    }
+
+    @Benchmark
+    public String perCall() throws IOException {
+        HttpClient client = new HttpClient();
+        PostMethod post = new PostMethod(service.getUrl());
+        try {
+            post.addParameter("payload", "{\"channel\":\"#bench\",\"text\":\"benchmark message\"}");
+            post.getParams().setContentCharset("UTF-8");
+            client.executeMethod(post);
+            return post.getResponseBodyAsString();
+        } finally {
+            post.releaseConnection();
+        }
+    }
+
+    private static class OkHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            InputStream in = exchange.getRequestBody();
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // drain the request so the connection can be reused
+            }
+            in.close();
+            byte[] body = "ok".getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
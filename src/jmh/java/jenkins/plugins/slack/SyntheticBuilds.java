@@ -0,0 +1,134 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+import org.mockito.MockSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Builds and change sets for the benchmarks, without a running Jenkins.
+ *
+ * The mocks only stub, they don't record their invocations, so they don't pile up garbage while being measured.
+ */
+final class SyntheticBuilds {
+
+    private static final int AUTHORS = 8;
+    private static final Collection<String> PATHS = Arrays.asList("src/main/App.java", "src/test/AppTest.java");
+
+    private SyntheticBuilds() {
+    }
+
+    static MockSettings stubOnly() {
+        return withSettings().stubOnly();
+    }
+
+    static SlackNotifier notifier() {
+        return new SlackNotifier("bench", "token", "#bench", "https://jenkins.example.com/", null);
+    }
+
+    static BuildListener listener() {
+        return mock(BuildListener.class, stubOnly());
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static AbstractBuild build(int changes) {
+        AbstractProject project = mock(AbstractProject.class, stubOnly());
+        when(project.getFullDisplayName()).thenReturn("Checkout / Web & API <stable>");
+
+        ChangeLogSet changeSet = new ChangeSet(entries(changes));
+
+        AbstractBuild build = mock(AbstractBuild.class, stubOnly());
+        // getProject() is final and returns getParent()
+        when(build.getParent()).thenReturn(project);
+        when(build.getNumber()).thenReturn(42);
+        when(build.getExternalizableId()).thenReturn("checkout#42");
+        when(build.getDisplayName()).thenReturn("#42");
+        when(build.getResult()).thenReturn(Result.FAILURE);
+        when(build.getDurationString()).thenReturn("3 min 12 sec");
+        when(build.getUrl()).thenReturn("job/checkout/42/");
+        when(build.hasChangeSetComputed()).thenReturn(true);
+        when(build.getChangeSet()).thenReturn(changeSet);
+        return build;
+    }
+
+    /**
+     * @return the context of the completed build, with a failure streak so the status reads "Still Failing"
+     */
+    static BuildContext context(AbstractBuild<?, ?> build) {
+        ResultStreakTracker.Streak streak = ResultStreakTracker.Streak.NONE
+                .next(40, Result.FAILURE, "alice")
+                .next(41, Result.FAILURE, null)
+                .next(42, Result.FAILURE, null);
+        return new BuildContext(build, new EnvVars(), streak);
+    }
+
+    private static List<ChangeLogSet.Entry> entries(int count) {
+        User[] authors = new User[AUTHORS];
+        for (int i = 0; i < authors.length; i++) {
+            authors[i] = mock(User.class, stubOnly());
+            when(authors[i].getDisplayName()).thenReturn("Author " + i);
+        }
+        List<ChangeLogSet.Entry> entries = new ArrayList<ChangeLogSet.Entry>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Entry("Fix <flaky> test & tidy up #" + i, authors[i % AUTHORS]));
+        }
+        return entries;
+    }
+
+    private static class ChangeSet extends ChangeLogSet<ChangeLogSet.Entry> {
+        private final List<ChangeLogSet.Entry> entries;
+
+        ChangeSet(List<ChangeLogSet.Entry> entries) {
+            super((AbstractBuild<?, ?>) null);
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean isEmptySet() {
+            return entries.isEmpty();
+        }
+
+        public Iterator<ChangeLogSet.Entry> iterator() {
+            return entries.iterator();
+        }
+    }
+
+    private static class Entry extends ChangeLogSet.Entry {
+        private final String msg;
+        private final User author;
+
+        Entry(String msg, User author) {
+            this.msg = msg;
+            this.author = author;
+        }
+
+        @Override
+        public String getMsg() {
+            return msg;
+        }
+
+        @Override
+        public User getAuthor() {
+            return author;
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return PATHS;
+        }
+    }
+}
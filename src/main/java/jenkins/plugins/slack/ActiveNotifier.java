@@ -1,53 +1,55 @@
 package jenkins.plugins.slack;
 
 
-import hudson.EnvVars;
+import com.google.common.util.concurrent.ListenableFuture;
 import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 import hudson.model.Cause;
 import hudson.model.CauseAction;
-import hudson.model.Hudson;
-import hudson.model.Project;
 import hudson.model.Result;
 import hudson.model.Run;
-import hudson.scm.ChangeLogSet;
-import hudson.scm.ChangeLogSet.AffectedFile;
-import hudson.scm.ChangeLogSet.Entry;
 import hudson.tasks.test.AbstractTestResultAction;
 import hudson.triggers.SCMTrigger;
 import hudson.util.LogTaskListener;
 import jenkins.model.Jenkins;
-import org.apache.commons.lang.StringUtils;
+import jenkins.plugins.slack.NotificationDispatcher.Priority;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.logging.Level;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
-import static java.util.logging.Level.INFO;
-import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
 
 @SuppressWarnings("rawtypes")
 public class ActiveNotifier implements FineGrainedNotifier {
 
     private static final Logger logger = Logger.getLogger(SlackListener.class.getName());
 
+    /**
+     * How many upstream builds {@link #getCommitList} looks through for changes.
+     */
+    static final int MAX_UPSTREAM_DEPTH = Integer.getInteger(ActiveNotifier.class.getName() + ".maxUpstreamDepth", 10);
+    static final int COMMIT_LIST_CACHE_SIZE = Integer.getInteger(ActiveNotifier.class.getName() + ".commitListCacheSize", 100);
+
+    /**
+     * Rendered commit lists by externalizable build id, least recently used evicted. Guarded by itself.
+     */
+    private static final Map<String, String> commitLists = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > COMMIT_LIST_CACHE_SIZE;
+        }
+    };
+
     SlackNotifier notifier;
     BuildListener listener;
 
-    private static ExecutorService executorService =
-            new ThreadPoolExecutor(10, 10, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(20));
-
     public ActiveNotifier(SlackNotifier notifier, BuildListener listener) {
         super();
         this.notifier = notifier;
@@ -55,11 +57,37 @@ public class ActiveNotifier implements FineGrainedNotifier {
     }
 
     public void started(AbstractBuild build) {
-        executorService.execute(new StartedTask(build));
+        dispatch(build, new StartedTask(build), Priority.LOW);
     }
 
     public void completed(AbstractBuild build) {
-        executorService.execute(new CompletedTask(build));
+        // recorded here rather than by the task, the dispatcher does not keep the order in which builds complete.
+        // Null until the task has loaded the project's streak, the first time the project completes.
+        ResultStreakTracker.Streak streak = ResultStreakTracker.get().record(build);
+        dispatch(build, new CompletedTask(build, streak), getPriority(build, streak));
+    }
+
+    private void dispatch(AbstractBuild build, Runnable task, Priority priority) {
+        if (!NotificationDispatcher.get().dispatch(task, priority)) {
+            listener.getLogger().println("Slack notification queue is full, dropped notification for " + build.getFullDisplayName());
+        }
+    }
+
+    /**
+     * Failures and back to normal transitions are what people watch the channel for, so they jump the queue.
+     */
+    static Priority getPriority(AbstractBuild build, ResultStreakTracker.Streak streak) {
+        Result result = build.getResult();
+        if (result == Result.FAILURE) {
+            return Priority.HIGH;
+        }
+        if (result == Result.SUCCESS && streak != null) {
+            Result previousResult = streak.getResultBefore(build);
+            if (previousResult == Result.FAILURE || previousResult == Result.UNSTABLE) {
+                return Priority.HIGH;
+            }
+        }
+        return Priority.NORMAL;
     }
 
     public void deleted(AbstractBuild r) {
@@ -68,98 +96,176 @@ public class ActiveNotifier implements FineGrainedNotifier {
     public void finalized(AbstractBuild r) {
     }
 
-    private SlackService getSlack(AbstractBuild r) {
-        AbstractProject<?, ?> project = r.getProject();
-        String projectRoom = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getRoom());
-        String teamDomain = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getTeamDomain());
-        String token = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getToken());
+    private SlackService getSlack(BuildContext context) {
+        AbstractProject<?, ?> project = context.getBuild().getProject();
+        SlackNotifier.SlackJobProperty jobProperty = project.getProperty(SlackNotifier.SlackJobProperty.class);
+        String projectRoom = Util.fixEmpty(jobProperty.getRoom());
+        String teamDomain = Util.fixEmpty(jobProperty.getTeamDomain());
+        String token = Util.fixEmpty(jobProperty.getToken());
 
-        EnvVars env = null;
-        try {
-            env = r.getEnvironment(listener);
-        } catch (Exception e) {
-            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
-            env = new EnvVars();
-        }
-        teamDomain = env.expand(teamDomain);
-        token = env.expand(token);
-        projectRoom = env.expand(projectRoom);
+        teamDomain = context.expand(teamDomain);
+        token = context.expand(token);
+        projectRoom = context.expand(projectRoom);
 
-        return notifier.newSlackService(teamDomain, token, projectRoom);
+        return notifier.getSlackService(teamDomain, token, projectRoom);
     }
 
-    private void notifyStart(AbstractBuild build, String message) {
+    /**
+     * Start notifications have the colour of the previous build.
+     */
+    private static String getStartColor(AbstractBuild build) {
         AbstractProject<?, ?> project = build.getProject();
         AbstractBuild<?, ?> previousBuild = project.getLastBuild().getPreviousCompletedBuild();
-        if (previousBuild == null) {
-            getSlack(build).publish(message, "good");
-        } else {
-            getSlack(build).publish(message, getBuildColor(previousBuild));
-        }
+        return previousBuild == null ? "good" : getBuildColor(previousBuild);
     }
 
-    String getChanges(AbstractBuild r) {
+    /**
+     * Posts the messages without waiting for Slack, the outcome goes to the build log once Slack has answered.
+     */
+    private void publish(SlackService slack, List<SlackMessage> messages, final AbstractBuild build, final long startTime) {
+        final String id = NotificationLog.begin();
+        final ListenableFuture<PublishResult> published;
+        try {
+            published = slack.publishAll(messages);
+        } finally {
+            NotificationLog.end();
+        }
+        published.addListener(new Runnable() {
+            public void run() {
+                PublishResult result = null;
+                try {
+                    result = published.get();
+                    if (!result.isSuccess()) {
+                        listener.getLogger().println("Slack notification failed: " + result.getFailures());
+                    }
+                } catch (ExecutionException e) {
+                    NotificationLog.log(WARNING, "notification-failed", id, e.getCause(), "build", build.getFullDisplayName());
+                } catch (InterruptedException e) {
+                    // cannot happen, the future is done
+                    Thread.currentThread().interrupt();
+                }
+                long elapsedTime = System.currentTimeMillis() - startTime;
+                listener.getLogger().println("Sending Slack notification took: " + elapsedTime + "ms at " + build.getFullDisplayName()
+                        + " (notification " + id + ")");
+                if (NotificationLog.isLoggable(FINE)) {
+                    NotificationLog.log(FINE, "notified", id, "build", build.getFullDisplayName(), "ms", elapsedTime,
+                            "success", result != null && result.isSuccess());
+                }
+            }
+        }, StandardSlackService.SAME_THREAD);
+    }
+
+    String getChanges(BuildContext context) {
+        AbstractBuild r = context.getBuild();
         if (!r.hasChangeSetComputed()) {
-            logger.info("No change set computed...");
+            logger.fine("No change set computed for " + r.getFullDisplayName());
             return null;
         }
-        ChangeLogSet changeSet = r.getChangeSet();
-        List<Entry> entries = new LinkedList<Entry>();
-        Set<AffectedFile> files = new HashSet<AffectedFile>();
-        for (Object o : changeSet.getItems()) {
-            Entry entry = (Entry) o;
-            logger.info("Entry " + o);
-            entries.add(entry);
-            files.addAll(entry.getAffectedFiles());
-        }
-        if (entries.isEmpty()) {
-            logger.info("Empty change...");
+        ChangeSetSummary changes = ChangeSetSummary.of(r.getChangeSet());
+        if (changes.isEmpty()) {
+            logger.fine("Empty change set in " + r.getFullDisplayName());
             return null;
         }
-        Set<String> authors = new HashSet<String>();
-        for (Entry entry : entries) {
-            authors.add(entry.getAuthor().getDisplayName());
-        }
-        MessageBuilder message = new MessageBuilder(notifier, r);
+        logger.fine(changes.getEntryCount() + " change(s) in " + r.getFullDisplayName());
+        MessageBuilder message = new MessageBuilder(notifier, context);
         message.append("Started by changes from ");
-        message.append(StringUtils.join(authors, ", "));
+        message.append(changes.formatAuthors());
         message.append(" (");
-        message.append(files.size());
+        message.append(changes.getFileCount());
         message.append(" file(s) changed)");
         return message.appendOpenLink().toString();
     }
 
-    String getCommitList(AbstractBuild r) {
-        ChangeLogSet changeSet = r.getChangeSet();
-        List<Entry> entries = new LinkedList<Entry>();
-        for (Object o : changeSet.getItems()) {
-            Entry entry = (Entry) o;
-            logger.info("Entry " + o);
-            entries.add(entry);
-        }
-        if (entries.isEmpty()) {
-            logger.info("Empty change...");
-            Cause.UpstreamCause c = (Cause.UpstreamCause)r.getCause(Cause.UpstreamCause.class);
-            if (c == null) {
-                return "No Changes.";
-            }
-            String upProjectName = c.getUpstreamProject();
-            int buildNumber = c.getUpstreamBuild();
-            AbstractProject project = Hudson.getInstance().getItemByFullName(upProjectName, AbstractProject.class);
-            AbstractBuild upBuild = (AbstractBuild)project.getBuildByNumber(buildNumber);
-            return getCommitList(upBuild);
-        }
-        Set<String> commits = new HashSet<String>();
-        for (Entry entry : entries) {
-            StringBuffer commit = new StringBuffer();
-            commit.append(entry.getMsg());
-            commit.append(" [").append(entry.getAuthor().getDisplayName()).append("]");
-            commits.add(commit.toString());
-        }
-        MessageBuilder message = new MessageBuilder(notifier, r);
-        message.append("Changes:\n- ");
-        message.append(StringUtils.join(commits, "\n- "));
-        return message.toString();
+    /**
+     * Lists the changes of the build or, if it has none, of the first upstream build that has some. The list of a
+     * build never changes once it is complete, so it is cached for the builds the search went through: the other
+     * downstream builds of a fan-out find it there.
+     */
+    String getCommitList(BuildContext context) {
+        List<String> visited = new ArrayList<String>();
+        BuildContext current = context;
+        String commitList = null;
+        // a build that is still running may not have its changes yet, and a missing upstream build may turn up
+        boolean cacheable = true;
+        while (commitList == null) {
+            AbstractBuild r = current.getBuild();
+            String id = r.getExternalizableId();
+            commitList = getCachedCommitList(id);
+            if (commitList != null) {
+                break;
+            }
+            visited.add(id);
+            if (r.isBuilding()) {
+                cacheable = false;
+            }
+            ChangeSetSummary changes = ChangeSetSummary.of(r.getChangeSet());
+            if (!changes.isEmpty()) {
+                logger.fine(changes.getEntryCount() + " change(s) in " + r.getFullDisplayName());
+                MessageBuilder message = new MessageBuilder(notifier, current);
+                message.append("Changes:\n");
+                message.append(changes.formatCommits());
+                commitList = message.toString();
+                break;
+            }
+            logger.fine("No changes in " + r.getFullDisplayName());
+            Cause.UpstreamCause cause = (Cause.UpstreamCause) r.getCause(Cause.UpstreamCause.class);
+            if (cause == null) {
+                commitList = "No Changes.";
+            } else if (visited.size() > MAX_UPSTREAM_DEPTH) {
+                logger.fine("No changes found within " + MAX_UPSTREAM_DEPTH + " upstream builds of " + context.getBuild().getFullDisplayName());
+                commitList = "No Changes.";
+            } else if (visited.contains(cause.getUpstreamProject() + "#" + cause.getUpstreamBuild())) {
+                logger.warning("Upstream builds of " + context.getBuild().getFullDisplayName() + " form a cycle: " + visited);
+                commitList = "No Changes.";
+            } else {
+                AbstractBuild upstream = findUpstreamBuild(cause);
+                if (upstream == null) {
+                    commitList = "No Changes.";
+                    cacheable = false;
+                } else {
+                    current = BuildContext.of(upstream, listener);
+                }
+            }
+        }
+        if (cacheable) {
+            synchronized (commitLists) {
+                for (String id : visited) {
+                    commitLists.put(id, commitList);
+                }
+            }
+        }
+        return commitList;
+    }
+
+    private static String getCachedCommitList(String buildId) {
+        synchronized (commitLists) {
+            return commitLists.get(buildId);
+        }
+    }
+
+    static void clearCommitLists() {
+        synchronized (commitLists) {
+            commitLists.clear();
+        }
+    }
+
+    /**
+     * @return the upstream build, or null if it or its project was deleted
+     */
+    private static AbstractBuild findUpstreamBuild(Cause.UpstreamCause cause) {
+        Jenkins jenkins = Jenkins.getInstance();
+        AbstractProject project = jenkins != null
+                ? jenkins.getItemByFullName(cause.getUpstreamProject(), AbstractProject.class)
+                : null;
+        if (project == null) {
+            logger.fine("Upstream project " + cause.getUpstreamProject() + " no longer exists");
+            return null;
+        }
+        AbstractBuild build = (AbstractBuild) project.getBuildByNumber(cause.getUpstreamBuild());
+        if (build == null) {
+            logger.fine("Upstream build " + cause.getUpstreamProject() + " #" + cause.getUpstreamBuild() + " no longer exists");
+        }
+        return build;
     }
 
     static String getBuildColor(AbstractBuild r) {
@@ -173,8 +279,8 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
     }
 
-    String getBuildStatusMessage(AbstractBuild r, boolean includeTestSummary, boolean includeCustomMessage) {
-        MessageBuilder message = new MessageBuilder(notifier, r);
+    String getBuildStatusMessage(BuildContext context, boolean includeTestSummary, boolean includeCustomMessage) {
+        MessageBuilder message = new MessageBuilder(notifier, context);
         message.appendStatusMessage();
         message.appendDuration();
         message.appendOpenLink();
@@ -189,21 +295,33 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
     public static class MessageBuilder {
 
-        private StringBuffer message;
+        /**
+         * Enough for a status line with its link, so most messages never grow the buffer.
+         */
+        static final int INITIAL_CAPACITY = 256;
+
+        private StringBuilder message;
         private SlackNotifier notifier;
         private AbstractBuild build;
+        private BuildContext context;
 
         public MessageBuilder(SlackNotifier notifier, AbstractBuild build) {
-            this.notifier = notifier;
-            this.message = new StringBuffer();
-            this.build = build;
-            startMessage();
+            this(notifier, build, false);
         }
 
         public MessageBuilder(SlackNotifier notifier, AbstractBuild build, boolean verifyQa3Tests) {
+            this(notifier, BuildContext.of(build, new LogTaskListener(logger, FINE)), verifyQa3Tests);
+        }
+
+        public MessageBuilder(SlackNotifier notifier, BuildContext context) {
+            this(notifier, context, false);
+        }
+
+        public MessageBuilder(SlackNotifier notifier, BuildContext context, boolean verifyQa3Tests) {
             this.notifier = notifier;
-            this.message = new StringBuffer();
-            this.build = build;
+            this.message = new StringBuilder(INITIAL_CAPACITY);
+            this.build = context.getBuild();
+            this.context = context;
 
             if (verifyQa3Tests) {
                 appendAlertIfAnyOfQa3TestsBuildIsFailing();
@@ -212,7 +330,7 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
 
         public void appendAlertIfAnyOfQa3TestsBuildIsFailing() {
-            String userId = getUserId(build);
+            String userId = context.getUserId();
             // this alert only has sense if someone is trying to copy release artifacts from DEV repo to PROD repo
             // by building Copy_Artifact_To_Prod job
             // for any other job this alert can be ignored
@@ -226,14 +344,21 @@ public class ActiveNotifier implements FineGrainedNotifier {
                     message.append(" is trying to release when there are QA3 tests failing!!! Whoever punch him/her first will get a star. :punch: \n");
                     message.append("Broken QA3 Tests:\n");
                     for (String brokenQa3TestBuild: brokenQa3TestBuilds) {
-                        message.append(brokenQa3TestBuild + "\n");
+                        message.append(brokenQa3TestBuild).append('\n');
                     }
                 }
             }
         }
 
         public MessageBuilder appendStatusMessage() {
-            message.append(this.escape(getStatusMessage(build)));
+            ResultStreakTracker.Streak streak = context.getStreak();
+            if (streak != null) {
+                Result previousResult = streak.getResultBefore(build);
+                escape(message, getStatusMessage(context.getResult(),
+                        previousResult != null ? previousResult : Result.SUCCESS, build.isBuilding()));
+            } else {
+                escape(message, getStatusMessage(build));
+            }
             return this;
         }
 
@@ -241,9 +366,15 @@ public class ActiveNotifier implements FineGrainedNotifier {
             if (r.isBuilding()) {
                 return "Starting...";
             }
-            Result result = r.getResult();
             Run previousBuild = r.getProject().getLastBuild().getPreviousBuild();
             Result previousResult = (previousBuild != null) ? previousBuild.getResult() : Result.SUCCESS;
+            return getStatusMessage(r.getResult(), previousResult, false);
+        }
+
+        static String getStatusMessage(Result result, Result previousResult, boolean building) {
+            if (building) {
+                return "Starting...";
+            }
             if (result == Result.SUCCESS && previousResult == Result.FAILURE) {
                 return "Back to normal";
             }
@@ -269,41 +400,44 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
 
         public MessageBuilder append(String string) {
-            message.append(this.escape(string));
+            escape(message, string);
             return this;
         }
 
         public MessageBuilder append(Object string) {
-            message.append(this.escape(string.toString()));
+            escape(message, string.toString());
             return this;
         }
 
         private MessageBuilder startMessage() {
             appendBrokenBuildNotificationAddressedToUserWhoTriggeredBuild();
-            message.append(this.escape(build.getProject().getFullDisplayName()));
+            escape(message, build.getProject().getFullDisplayName());
             appendBranch();
             message.append(" - ");
-            message.append(this.escape(build.getDisplayName()));
-            message.append(" ");
+            escape(message, build.getDisplayName());
+            message.append(' ');
 
             return this;
         }
 
         private void appendBranch() {
-            String buildBranch = getBuildBranch();
+            String buildBranch = context.getBranch();
             if (buildBranch != null) {
                 message.append("(branch: ").append(buildBranch).append(")");
             }
         }
 
         private void appendBrokenBuildNotificationAddressedToUserWhoTriggeredBuild() {
-            String userId = getUserId(build);
-            if (build.getResult() == Result.FAILURE && userId != null) {
+            String userId = context.getUserId();
+            if (context.getResult() == Result.FAILURE && userId != null) {
                 appendSendTo(userId);
-                String buildBranch = getBuildBranch();
+                String buildBranch = context.getBranch();
                 if ("stable".equalsIgnoreCase(buildBranch)) {
                     message.append(": You have broken a STABLE build. Please fix it and don't let your teammates waiting! :strobe: \n");
-                    String firstFailedBuildUserId = getUserId(findFirstFailedBuild());
+                    ResultStreakTracker.Streak streak = context.getStreak();
+                    String firstFailedBuildUserId = streak != null && streak.getResult() == Result.FAILURE
+                            ? streak.getFirstUserId()
+                            : BuildContext.findUserId(findFirstFailedBuild());
                     if (firstFailedBuildUserId != null && !userId.equals(firstFailedBuildUserId)) {
                         appendSendTo(firstFailedBuildUserId);
                         message.append(": You are a reason why your teammate build has failed. Please fix it and apologies!\n");
@@ -314,24 +448,15 @@ public class ActiveNotifier implements FineGrainedNotifier {
             }
         }
 
-        private String getBuildBranch() {
-            try {
-                String buildBranch = build.getEnvironment().get("BUILD_BRANCH");
-                return buildBranch != null ? buildBranch : build.getEnvironment().get("BRANCH");
-            } catch (Exception e) {
-                return null;
-            }
-        }
-
         public MessageBuilder appendOpenLink() {
-            String url = notifier.getBuildServerUrl() + build.getUrl();
+            String url = notifier.getBuildServerUrl() + context.getUrl();
             message.append(" (<").append(url).append("|Open>)");
             return this;
         }
 
         public MessageBuilder appendDuration() {
             message.append(" after ");
-            message.append(build.getDurationString());
+            message.append(context.getDurationString());
             return this;
         }
 
@@ -342,9 +467,9 @@ public class ActiveNotifier implements FineGrainedNotifier {
                 int failed = action.getFailCount();
                 int skipped = action.getSkipCount();
                 message.append("\nTest Status:\n");
-                message.append("\tPassed: " + (total - failed - skipped));
-                message.append(", Failed: " + failed);
-                message.append(", Skipped: " + skipped);
+                message.append("\tPassed: ").append(total - failed - skipped);
+                message.append(", Failed: ").append(failed);
+                message.append(", Skipped: ").append(skipped);
             } else {
                 message.append("\nNo Tests found.");
             }
@@ -355,16 +480,8 @@ public class ActiveNotifier implements FineGrainedNotifier {
             AbstractProject<?, ?> project = build.getProject();
             String customMessage = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class)
                     .getCustomMessage());
-            EnvVars envVars = new EnvVars();
-            try {
-                envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
-            } catch (IOException e) {
-                logger.log(SEVERE, e.getMessage(), e);
-            } catch (InterruptedException e) {
-                logger.log(SEVERE, e.getMessage(), e);
-            }
-            message.append("\n");
-            message.append(envVars.expand(customMessage));
+            message.append('\n');
+            message.append(context.expand(customMessage));
             return this;
         }
 
@@ -377,58 +494,43 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
 
         public String escape(String string) {
-            string = string.replace("&", "&amp;");
-            string = string.replace("<", "&lt;");
-            string = string.replace(">", "&gt;");
-
-            return string;
-        }
-
-        private String getUserId(Run build) {
-            Cause.UserIdCause userIdCause = findUserIdCause(build);
-            return userIdCause != null ? userIdCause.getUserId() : null;
+            int i = indexOfEscaped(string, 0);
+            if (i < 0) {
+                return string;
+            }
+            StringBuilder escaped = new StringBuilder(string.length() + 16);
+            escape(escaped, string);
+            return escaped.toString();
+        }
+
+        /**
+         * Appends the string with &amp;, &lt; and &gt; escaped, in one pass and without copying runs that need none.
+         */
+        static void escape(StringBuilder out, String string) {
+            int start = 0;
+            int i = indexOfEscaped(string, 0);
+            while (i >= 0) {
+                out.append(string, start, i);
+                char c = string.charAt(i);
+                out.append(c == '&' ? "&amp;" : c == '<' ? "&lt;" : "&gt;");
+                start = i + 1;
+                i = indexOfEscaped(string, start);
+            }
+            out.append(string, start, string.length());
         }
 
-        private Cause.UserIdCause findUserIdCause(Run build) {
-            CauseAction causeAction = build.getAction(CauseAction.class);
-            if (causeAction != null) {
-                Cause.UserIdCause userIdCause = causeAction.findCause(Cause.UserIdCause.class);
-                if (userIdCause != null) {
-                    return userIdCause;
-                } else {
-                    Cause.UpstreamCause upstreamCause = causeAction.findCause(Cause.UpstreamCause.class);
-                    while(upstreamCause != null) {
-                        List<Cause> upstreamCauses = upstreamCause.getUpstreamCauses();
-                        upstreamCause = null;
-                        for (Cause cause: upstreamCauses) {
-                            if (Cause.UserIdCause.class.isAssignableFrom(cause.getClass())) {
-                                return (Cause.UserIdCause) cause;
-                            } else if (Cause.UpstreamCause.class.isAssignableFrom(cause.getClass())) {
-                                upstreamCause = (Cause.UpstreamCause) cause;
-                            }
-                        }
-                    }
+        private static int indexOfEscaped(String string, int from) {
+            for (int i = from, n = string.length(); i < n; i++) {
+                char c = string.charAt(i);
+                if (c == '&' || c == '<' || c == '>') {
+                    return i;
                 }
             }
-
-            return null;
+            return -1;
         }
 
         public List<String> getBrokenQa3TestBuilds() {
-            List<Project> projects = Jenkins.getInstance().getProjects();
-            List<String> brokenProjects = new ArrayList<String>();
-            for(Project p: projects) {
-                logger.log(Level.INFO, p.getName().toLowerCase());
-                if (p.getName().toLowerCase().contains("qa3_tests")
-                        && !p.getName().toLowerCase().contains("experimental")) { // ignore experimental test builds like Responsive_Experimental_QA3_Tests
-                    AbstractBuild lastBuild = p.getLastBuild();
-                    if (lastBuild != null && Result.FAILURE == lastBuild.getResult()) {
-                        brokenProjects.add(p.getName());
-                    }
-                }
-            }
-
-            return brokenProjects;
+            return Qa3TestIndex.get().getBrokenJobs();
         }
 
         public Run findFirstFailedBuild() {
@@ -457,42 +559,52 @@ public class ActiveNotifier implements FineGrainedNotifier {
             SlackNotifier.SlackJobProperty jobProperty = project.getProperty(SlackNotifier.SlackJobProperty.class);
 
             CauseAction causeAction = build.getAction(CauseAction.class);
+            BuildContext context = BuildContext.of(build, listener);
+            SlackService slack = getSlack(context);
 
+            long renderStart = System.nanoTime();
+            String causeMessage = null;
             if (causeAction != null) {
                 Cause scmCause = causeAction.findCause(SCMTrigger.SCMTriggerCause.class);
                 if (scmCause == null) {
-                    MessageBuilder message = new MessageBuilder(notifier, build, true);
+                    MessageBuilder message = new MessageBuilder(notifier, context, true);
                     message.append(causeAction.getShortDescription());
-                    notifyStart(build, message.appendOpenLink().toString());
+                    causeMessage = message.appendOpenLink().toString();
                 }
             }
-
-            String changes = getChanges(build);
-            if (changes != null) {
-                notifyStart(build, changes);
-            } else {
-                notifyStart(build, getBuildStatusMessage(build, false, jobProperty.includeCustomMessage()));
+            String changes = getChanges(context);
+            if (changes == null) {
+                changes = getBuildStatusMessage(context, false, jobProperty.includeCustomMessage());
             }
+            SlackMetrics.get().recordRender(System.nanoTime() - renderStart);
 
-            long stopTime = System.currentTimeMillis();
-            long elapsedTime = stopTime - startTime;
-
-            listener.getLogger().println("Sending Slack notification took: " + elapsedTime + "ms at " + build.getFullDisplayName());
-
+            String color = getStartColor(build);
+            List<SlackMessage> messages = new ArrayList<SlackMessage>(2);
+            if (causeMessage != null) {
+                messages.add(new SlackMessage(causeMessage, color));
+            }
+            messages.add(new SlackMessage(changes, color));
+            publish(slack, messages, build, startTime);
         }
     }
 
     private class CompletedTask implements Runnable {
         private AbstractBuild build;
+        private ResultStreakTracker.Streak streak;
 
-        public CompletedTask(AbstractBuild build) {
+        public CompletedTask(AbstractBuild build, ResultStreakTracker.Streak streak) {
             this.build = build;
+            this.streak = streak;
         }
 
         public void run() {
 
             long startTime = System.currentTimeMillis();
 
+            ResultStreakTracker.Streak loaded = ResultStreakTracker.get().load(build);
+            if (streak == null) {
+                streak = loaded;
+            }
             AbstractProject<?, ?> project = build.getProject();
             SlackNotifier.SlackJobProperty jobProperty = project.getProperty(SlackNotifier.SlackJobProperty.class);
             if (jobProperty == null) {
@@ -500,11 +612,10 @@ public class ActiveNotifier implements FineGrainedNotifier {
                 return;
             }
             Result result = build.getResult();
-            AbstractBuild<?, ?> previousBuild = project.getLastBuild();
-            do {
-                previousBuild = previousBuild.getPreviousCompletedBuild();
-            } while (previousBuild != null && previousBuild.getResult() == Result.ABORTED);
-            Result previousResult = (previousBuild != null) ? previousBuild.getResult() : Result.SUCCESS;
+            Result previousResult = streak.getResultBefore(build);
+            if (previousResult == null) {
+                previousResult = Result.SUCCESS;
+            }
             if ((result == Result.ABORTED && jobProperty.getNotifyAborted())
                     || (result == Result.FAILURE
                     && (previousResult != Result.FAILURE || jobProperty.getNotifyRepeatedFailure())
@@ -515,19 +626,21 @@ public class ActiveNotifier implements FineGrainedNotifier {
                     && jobProperty.getNotifyBackToNormal())
                     || (result == Result.SUCCESS && jobProperty.getNotifySuccess())
                     || (result == Result.UNSTABLE && jobProperty.getNotifyUnstable())) {
-                getSlack(build).publish(
-                        getBuildStatusMessage(build, jobProperty.includeTestSummary(), jobProperty.includeCustomMessage()),
-                        getBuildColor(build));
-                if (jobProperty.getShowCommitList()) {
-                    getSlack(build).publish(getCommitList(build), getBuildColor(build));
+                BuildContext context = BuildContext.of(build, listener, streak);
+                SlackService slack = getSlack(context);
+                String color = getBuildColor(build);
+                long renderStart = System.nanoTime();
+                String status = getBuildStatusMessage(context, jobProperty.includeTestSummary(), jobProperty.includeCustomMessage());
+                String commitList = jobProperty.getShowCommitList() ? getCommitList(context) : null;
+                SlackMetrics.get().recordRender(System.nanoTime() - renderStart);
+
+                List<SlackMessage> messages = new ArrayList<SlackMessage>(2);
+                messages.add(new SlackMessage(status, color));
+                if (commitList != null) {
+                    messages.add(new SlackMessage(commitList, color));
                 }
+                publish(slack, messages, build, startTime);
             }
-
-            long stopTime = System.currentTimeMillis();
-            long elapsedTime = stopTime - startTime;
-
-            listener.getLogger().println("Sending Slack notification took: " + elapsedTime + "ms at " + build.getFullDisplayName());
-            logger.info("Sending Slack notification took: " + elapsedTime + "ms at " + build.getFullDisplayName());
         }
     }
 }
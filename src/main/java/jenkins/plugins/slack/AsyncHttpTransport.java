@@ -0,0 +1,176 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.ning.http.client.AsyncCompletionHandler;
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Body;
+import com.ning.http.client.BodyGenerator;
+import com.ning.http.client.ProxyServer;
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Posts with the non-blocking async-http-client. A post returns as soon as it is handed to the client, responses
+ * are handled on the client's I/O threads.
+ *
+ * Connection limits and timeouts are those of {@link PooledHttpClient}, so switching transports does not change
+ * how hard Slack is hit.
+ */
+final class AsyncHttpTransport extends SlackTransport {
+
+    private static final Logger logger = Logger.getLogger(AsyncHttpTransport.class.getName());
+
+    static final String ID = "async";
+
+    private volatile AsyncHttpClient client;
+
+    @Override
+    String getId() {
+        return ID;
+    }
+
+    @Override
+    ListenableFuture<Response> post(String url, JsonPayload payload) {
+        final SettableFuture<Response> response = SettableFuture.create();
+        try {
+            getClient().preparePost(url)
+                    .setHeader("Content-Type", JsonPayload.CONTENT_TYPE)
+                    .setBody(new PayloadBody(payload))
+                    .execute(new AsyncCompletionHandler<Response>() {
+                        @Override
+                        public Response onCompleted(com.ning.http.client.Response r) throws Exception {
+                            Response completed = new Response(r.getStatusCode(), r.getResponseBody(), r.getHeader("Retry-After"));
+                            response.set(completed);
+                            return completed;
+                        }
+
+                        @Override
+                        public void onThrowable(Throwable t) {
+                            response.setException(t);
+                        }
+                    });
+        } catch (IOException e) {
+            response.setException(e);
+        } catch (RuntimeException e) {
+            response.setException(e);
+        }
+        return response;
+    }
+
+    private AsyncHttpClient getClient() {
+        AsyncHttpClient current = client;
+        if (current == null) {
+            synchronized (this) {
+                current = client;
+                if (current == null) {
+                    current = createClient();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static AsyncHttpClient createClient() {
+        AsyncHttpClientConfig.Builder config = new AsyncHttpClientConfig.Builder()
+                .setAllowPoolingConnection(true)
+                .setMaximumConnectionsPerHost(PooledHttpClient.MAX_CONNECTIONS_PER_HOST)
+                .setMaximumConnectionsTotal(PooledHttpClient.MAX_TOTAL_CONNECTIONS)
+                .setConnectionTimeoutInMs(PooledHttpClient.CONNECTION_TIMEOUT_MILLIS)
+                .setRequestTimeoutInMs(PooledHttpClient.SOCKET_TIMEOUT_MILLIS);
+        if (Jenkins.getInstance() != null) {
+            ProxyConfiguration proxy = Jenkins.getInstance().proxy;
+            if (proxy != null) {
+                String username = proxy.getUserName();
+                if (username != null && !"".equals(username.trim())) {
+                    logger.info("Using proxy authentication (user=" + username + ")");
+                    config.setProxyServer(new ProxyServer(proxy.name, proxy.port, username, proxy.getPassword()));
+                } else {
+                    config.setProxyServer(new ProxyServer(proxy.name, proxy.port));
+                }
+            }
+        }
+        return new AsyncHttpClient(config.build());
+    }
+
+    /**
+     * Closes the client, the next post creates a new one. Posts in flight fail and are retried.
+     */
+    @Override
+    synchronized void close() {
+        AsyncHttpClient current = client;
+        client = null;
+        if (current != null) {
+            current.closeAsynchronously();
+        }
+    }
+
+    /**
+     * Streams the payload from its parts, so the attachments shared by every channel are not copied into a body of
+     * their own for each post.
+     */
+    private static final class PayloadBody implements BodyGenerator {
+        private final JsonPayload payload;
+
+        PayloadBody(JsonPayload payload) {
+            this.payload = payload;
+        }
+
+        public Body createBody() {
+            final byte[][] parts = payload.parts();
+            final long length = payload.getContentLength();
+            return new Body() {
+                private int part;
+                private int offset;
+
+                public long getContentLength() {
+                    return length;
+                }
+
+                public long read(ByteBuffer buffer) {
+                    if (part == parts.length) {
+                        return -1;
+                    }
+                    int read = 0;
+                    while (part < parts.length && buffer.hasRemaining()) {
+                        int n = Math.min(buffer.remaining(), parts[part].length - offset);
+                        buffer.put(parts[part], offset, n);
+                        read += n;
+                        offset += n;
+                        if (offset == parts[part].length) {
+                            part++;
+                            offset = 0;
+                        }
+                    }
+                    return read;
+                }
+
+                public void close() {
+                }
+            };
+        }
+    }
+
+    @Extension
+    public static class ProxyConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            SlackTransport transport = SlackTransport.get();
+            if (o instanceof ProxyConfiguration && transport instanceof AsyncHttpTransport) {
+                logger.info("Proxy configuration changed, refreshing the asynchronous Slack HTTP client");
+                transport.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What the notifications of one build event need to know about the build, taken once when the event is handled.
+ *
+ * Computing the environment runs every environment contributor, so it is done here once instead of by every
+ * message and lookup that needs a variable.
+ */
+public class BuildContext {
+
+    private static final Logger logger = Logger.getLogger(BuildContext.class.getName());
+
+    private final AbstractBuild<?, ?> build;
+    private final EnvVars environment;
+    private final String branch;
+    private final String userId;
+    private final Result result;
+    private final String durationString;
+    private final String url;
+    private final ResultStreakTracker.Streak streak;
+
+    BuildContext(AbstractBuild<?, ?> build, EnvVars environment) {
+        this(build, environment, null);
+    }
+
+    BuildContext(AbstractBuild<?, ?> build, EnvVars environment, ResultStreakTracker.Streak streak) {
+        this.build = build;
+        this.environment = environment;
+        String buildBranch = environment.get("BUILD_BRANCH");
+        this.branch = buildBranch != null ? buildBranch : environment.get("BRANCH");
+        this.userId = findUserId(build);
+        this.result = build.getResult();
+        this.durationString = build.getDurationString();
+        this.url = build.getUrl();
+        this.streak = streak;
+    }
+
+    /**
+     * @param listener where problems computing the environment are reported
+     */
+    public static BuildContext of(AbstractBuild<?, ?> build, TaskListener listener) {
+        return of(build, listener, null);
+    }
+
+    /**
+     * @param streak the project's result streak including the completed build
+     */
+    public static BuildContext of(AbstractBuild<?, ?> build, TaskListener listener, ResultStreakTracker.Streak streak) {
+        EnvVars environment = null;
+        try {
+            environment = build.getEnvironment(listener);
+        } catch (Exception e) {
+            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
+            logger.log(Level.FINE, "Unable to compute the environment of " + build, e);
+        }
+        return new BuildContext(build, environment != null ? environment : new EnvVars(), streak);
+    }
+
+    public AbstractBuild<?, ?> getBuild() {
+        return build;
+    }
+
+    public EnvVars getEnvironment() {
+        return environment;
+    }
+
+    public String expand(String value) {
+        return environment.expand(value);
+    }
+
+    /**
+     * @return BUILD_BRANCH, or BRANCH if that is not set
+     */
+    public String getBranch() {
+        return branch;
+    }
+
+    /**
+     * @return the user who started the build, directly or through upstream builds
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the result when the event happened, null while the build was running
+     */
+    public Result getResult() {
+        return result;
+    }
+
+    public String getDurationString() {
+        return durationString;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the project's result streak, null for a build that has not completed
+     */
+    public ResultStreakTracker.Streak getStreak() {
+        return streak;
+    }
+
+    static String findUserId(Run<?, ?> build) {
+        if (build == null) {
+            return null;
+        }
+        Cause.UserIdCause userIdCause = findUserIdCause(build);
+        return userIdCause != null ? userIdCause.getUserId() : null;
+    }
+
+    private static Cause.UserIdCause findUserIdCause(Run<?, ?> build) {
+        CauseAction causeAction = build.getAction(CauseAction.class);
+        if (causeAction != null) {
+            Cause.UserIdCause userIdCause = causeAction.findCause(Cause.UserIdCause.class);
+            if (userIdCause != null) {
+                return userIdCause;
+            } else {
+                Cause.UpstreamCause upstreamCause = causeAction.findCause(Cause.UpstreamCause.class);
+                while(upstreamCause != null) {
+                    List<Cause> upstreamCauses = upstreamCause.getUpstreamCauses();
+                    upstreamCause = null;
+                    for (Cause cause: upstreamCauses) {
+                        if (Cause.UserIdCause.class.isAssignableFrom(cause.getClass())) {
+                            return (Cause.UserIdCause) cause;
+                        } else if (Cause.UpstreamCause.class.isAssignableFrom(cause.getClass())) {
+                            upstreamCause = (Cause.UpstreamCause) cause;
+                        }
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+}
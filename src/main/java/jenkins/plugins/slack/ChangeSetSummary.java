@@ -0,0 +1,173 @@
+package jenkins.plugins.slack;
+
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the notifications say about a change set, collected in one pass over its entries.
+ *
+ * Only the first {@link #MAX_COMMITS} commits are kept, plus a commit count for each of at most
+ * {@link #MAX_TRACKED_AUTHORS} authors. Files are only counted. Memory use does not depend on the size of the
+ * change set, and a merge of thousands of commits still makes a message Slack accepts.
+ */
+final class ChangeSetSummary {
+
+    static final int MAX_COMMITS = Integer.getInteger(ChangeSetSummary.class.getName() + ".maxCommits", 50);
+    static final int MAX_AUTHORS = Integer.getInteger(ChangeSetSummary.class.getName() + ".maxAuthors", 10);
+    /**
+     * Authors beyond this many are not told apart, each of their commits counts as one more author.
+     */
+    static final int MAX_TRACKED_AUTHORS = 10000;
+
+    private final int maxCommits;
+    private final int maxAuthors;
+
+    private int entryCount;
+    private long fileCount;
+    private final Set<String> commits = new LinkedHashSet<String>();
+    private int otherCommitCount;
+    private final Map<String, Integer> authorCommits = new HashMap<String, Integer>();
+    private int untrackedAuthorCount;
+
+    ChangeSetSummary(int maxCommits, int maxAuthors) {
+        this.maxCommits = maxCommits;
+        this.maxAuthors = maxAuthors;
+    }
+
+    static ChangeSetSummary of(ChangeLogSet<?> changeSet) {
+        ChangeSetSummary summary = new ChangeSetSummary(MAX_COMMITS, MAX_AUTHORS);
+        for (ChangeLogSet.Entry entry : changeSet) {
+            summary.add(entry);
+        }
+        return summary;
+    }
+
+    void add(ChangeLogSet.Entry entry) {
+        User author = entry.getAuthor();
+        add(author != null ? author.getDisplayName() : null, entry.getMsg(), countFiles(entry));
+    }
+
+    private static int countFiles(ChangeLogSet.Entry entry) {
+        Collection<?> files;
+        try {
+            files = entry.getAffectedFiles();
+        } catch (UnsupportedOperationException e) {
+            // not implemented by every SCM
+            files = entry.getAffectedPaths();
+        }
+        return files != null ? files.size() : 0;
+    }
+
+    void add(String author, String message, int files) {
+        entryCount++;
+        fileCount += files;
+
+        if (commits.size() < maxCommits) {
+            commits.add(message + " [" + author + "]");
+        } else {
+            otherCommitCount++;
+        }
+
+        Integer count = authorCommits.get(author);
+        if (count != null) {
+            authorCommits.put(author, count + 1);
+        } else if (authorCommits.size() < MAX_TRACKED_AUTHORS) {
+            authorCommits.put(author, 1);
+        } else {
+            untrackedAuthorCount++;
+        }
+    }
+
+    boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the number of affected files of all entries, a file changed by several commits counts once for each
+     */
+    long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return the authors with the most commits, most first
+     */
+    List<String> getTopAuthors() {
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(authorCommits.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                int byCount = b.getValue().compareTo(a.getValue());
+                return byCount != 0 ? byCount : String.valueOf(a.getKey()).compareTo(String.valueOf(b.getKey()));
+            }
+        });
+        List<String> authors = new ArrayList<String>();
+        for (int i = 0; i < sorted.size() && i < maxAuthors; i++) {
+            authors.add(sorted.get(i).getKey());
+        }
+        return authors;
+    }
+
+    int getOtherAuthorCount() {
+        return Math.max(0, authorCommits.size() - maxAuthors) + untrackedAuthorCount;
+    }
+
+    /**
+     * @return the first commits, as "message [author]"
+     */
+    List<String> getCommits() {
+        return new ArrayList<String>(commits);
+    }
+
+    int getOtherCommitCount() {
+        return otherCommitCount;
+    }
+
+    /**
+     * @return e.g. "alice, bob and 3 more"
+     */
+    String formatAuthors() {
+        StringBuilder text = new StringBuilder();
+        for (String author : getTopAuthors()) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(author);
+        }
+        int others = getOtherAuthorCount();
+        if (others > 0) {
+            text.append(" and ").append(others).append(" more");
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return a line per commit starting with "- ", and "...and N more" if some were left out
+     */
+    String formatCommits() {
+        StringBuilder text = new StringBuilder();
+        for (String commit : commits) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append("- ").append(commit);
+        }
+        if (otherCommitCount > 0) {
+            text.append("\n...and ").append(otherCommitCount).append(" more");
+        }
+        return text.toString();
+    }
+}
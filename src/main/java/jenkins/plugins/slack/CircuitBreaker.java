@@ -0,0 +1,210 @@
+package jenkins.plugins.slack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops posting to a webhook that keeps failing, e.g. a team whose token was revoked or whose endpoint hangs,
+ * so its posts fail fast instead of tying up threads that other teams' notifications are waiting for.
+ *
+ * The breaker watches the outcome of the last {@link #WINDOW} posts. Once at least {@link #MINIMUM_CALLS} of them
+ * are known and {@link #FAILURE_RATE} percent or more failed it opens and rejects every post for
+ * {@link #OPEN_MILLIS}. After that it lets a single trial post through (half-open): success closes it again,
+ * failure opens it for another period.
+ */
+public class CircuitBreaker {
+
+    static final int WINDOW = Integer.getInteger(CircuitBreaker.class.getName() + ".window", 20);
+    static final int MINIMUM_CALLS = Integer.getInteger(CircuitBreaker.class.getName() + ".minimumCalls", 10);
+    static final int FAILURE_RATE = Integer.getInteger(CircuitBreaker.class.getName() + ".failureRate", 50);
+    static final long OPEN_MILLIS = Long.getLong(CircuitBreaker.class.getName() + ".openMillis", TimeUnit.SECONDS.toMillis(30));
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final ConcurrentMap<Webhook, CircuitBreaker> breakers = new ConcurrentHashMap<Webhook, CircuitBreaker>();
+
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRate;
+    private final long openNanos;
+
+    private final boolean[] outcomes;
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    CircuitBreaker(String name, int window, int minimumCalls, int failureRate, long openMillis) {
+        this.name = name;
+        this.outcomes = new boolean[window];
+        this.minimumCalls = minimumCalls;
+        this.failureRate = failureRate;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return the breaker shared by every post to the webhook identified by team domain and token
+     */
+    public static CircuitBreaker forWebhook(String teamDomain, String token) {
+        Webhook key = new Webhook(teamDomain, token);
+        CircuitBreaker breaker = breakers.get(key);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(key.toString(), WINDOW, MINIMUM_CALLS, FAILURE_RATE, OPEN_MILLIS);
+            breaker = breakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    public static List<CircuitBreaker> all() {
+        return new ArrayList<CircuitBreaker>(breakers.values());
+    }
+
+    static void clear() {
+        breakers.clear();
+    }
+
+    /**
+     * Asks to make a post. Every permitted post must be followed by {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return false if the breaker is open and the post must not be made
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    synchronized boolean tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openUntil < 0) {
+                    break;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                break;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public void onSuccess() {
+        record(true, System.nanoTime());
+    }
+
+    public void onFailure() {
+        record(false, System.nanoTime());
+    }
+
+    synchronized void record(boolean success, long now) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (success) {
+                state = State.CLOSED;
+                next = 0;
+                calls = 0;
+                failures = 0;
+            } else {
+                open(now);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // a post that started before the breaker opened
+            return;
+        }
+        if (calls == outcomes.length) {
+            if (!outcomes[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[next] = success;
+        next = (next + 1) % outcomes.length;
+        if (!success) {
+            failures++;
+            if (calls >= minimumCalls && failures * 100 >= failureRate * calls) {
+                open(now);
+            }
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + openNanos;
+        opened.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return how long the breaker stays open, or 0 if it lets posts through
+     */
+    public long getRemainingOpenMillis() {
+        return getRemainingOpenMillis(System.nanoTime());
+    }
+
+    synchronized long getRemainingOpenMillis(long now) {
+        return state == State.OPEN ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntil - now)) : 0;
+    }
+
+    /**
+     * @return percentage of failed posts in the current window
+     */
+    public synchronized int getFailureRate() {
+        return calls == 0 ? 0 : failures * 100 / calls;
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return how often the breaker opened
+     */
+    public long getOpenedCount() {
+        return opened.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + getState();
+    }
+
+    /**
+     * Reports a post that was not made because the breaker is open.
+     */
+    public static class OpenException extends IOException {
+        public OpenException(CircuitBreaker breaker) {
+            super("Not posting to " + breaker.getName() + ", too many recent posts failed");
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.Util;
+import jenkins.plugins.slack.PublishResult.ChannelResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the messages headed for the same channel within a short window and posts them as a single Slack
+ * message, with one attachment (and colour) per original message.
+ *
+ * When many jobs finish together this turns one post per build and channel into one post per channel and window.
+ * {@link #publish} only queues the message and reports true as soon as it is queued, the futures of
+ * {@link #publishAsync} and {@link #publishAll} are done when the combined message has been sent.
+ */
+public class CoalescingSlackService implements SlackService {
+
+    private static final Logger logger = Logger.getLogger(CoalescingSlackService.class.getName());
+
+    static final int DEFAULT_WINDOW_SECONDS = 5;
+    static final int DEFAULT_MAX_MESSAGES = 20;
+    /**
+     * Slack does not accept more attachments than this in one message.
+     */
+    static final int MAX_ATTACHMENTS = 100;
+
+    private static volatile boolean enabled;
+    private static volatile long windowMillis = TimeUnit.SECONDS.toMillis(DEFAULT_WINDOW_SECONDS);
+    private static volatile int maxMessages = DEFAULT_MAX_MESSAGES;
+
+    private static final ScheduledExecutorService flusher =
+            Executors.newScheduledThreadPool(2, new DaemonThreadFactory("Slack coalescer"));
+
+    /**
+     * Guarded by itself.
+     */
+    private static final Map<Key, Batch> pending = new HashMap<Key, Batch>();
+
+    private final Webhook webhook;
+    private final String[] roomIds;
+    private String endpoint;
+
+    public CoalescingSlackService(String teamDomain, String token, String roomId) {
+        this.webhook = new Webhook(teamDomain, token);
+        this.roomIds = roomId.split("[,; ]+");
+    }
+
+    /**
+     * Non-positive window or message count restore the defaults.
+     */
+    public static void configure(boolean enabled, int windowSeconds, int maxMessages) {
+        CoalescingSlackService.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds > 0 ? windowSeconds : DEFAULT_WINDOW_SECONDS);
+        CoalescingSlackService.maxMessages = Math.min(maxMessages > 0 ? maxMessages : DEFAULT_MAX_MESSAGES, MAX_ATTACHMENTS);
+        CoalescingSlackService.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean publish(String message) {
+        return publish(message, "warning");
+    }
+
+    public boolean publish(String message, String color) {
+        publishAsync(message, color);
+        return true;
+    }
+
+    public ListenableFuture<PublishResult> publishAsync(String message, String color) {
+        return publishAll(Collections.singletonList(new SlackMessage(message, color)));
+    }
+
+    public ListenableFuture<PublishResult> publishAll(List<SlackMessage> messages) {
+        List<ListenableFuture<PublishResult>> results = new ArrayList<ListenableFuture<PublishResult>>();
+        String id = NotificationLog.currentId();
+        for (String roomId : roomIds) {
+            Key key = new Key(webhook, roomId);
+            ListenableFuture<PublishResult> result = null;
+            for (SlackMessage message : messages) {
+                ListenableFuture<PublishResult> batch = add(key, message, id, endpoint);
+                if (batch != result) {
+                    // the first batch, or a new one after the previous one filled up
+                    results.add(batch);
+                    result = batch;
+                }
+            }
+        }
+        return PublishResult.combine(results);
+    }
+
+    /**
+     * @see StandardSlackService#setEndpoint(String)
+     */
+    void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @return the result of the batch the message was added to
+     */
+    private static ListenableFuture<PublishResult> add(Key key, SlackMessage message, String notificationId, String endpoint) {
+        Batch full = null;
+        Batch batch;
+        synchronized (pending) {
+            batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(key, endpoint);
+                pending.put(key, batch);
+                batch.timer = flusher.schedule(new Flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            batch.messages.add(message);
+            batch.notificationIds.add(notificationId);
+            if (batch.messages.size() >= maxMessages) {
+                pending.remove(key);
+                batch.timer.cancel(false);
+                full = batch;
+            }
+        }
+        if (full != null) {
+            flusher.execute(new Flush(full));
+        }
+        return batch.result;
+    }
+
+    static int getPendingCount() {
+        synchronized (pending) {
+            int count = 0;
+            for (Batch batch : pending.values()) {
+                count += batch.messages.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns once the post is started, so a slow or rate limited channel does not hold up the flusher threads.
+     */
+    private static void send(final Batch batch) {
+        final Key key = batch.key;
+        Outbox outbox = batch.endpoint == null ? Outbox.get() : null;
+        if (outbox != null) {
+            try {
+                outbox.append(new OutboxEntry(key.webhook.getTeamDomain(), key.webhook.getToken(), key.roomId,
+                        batch.messages, batch.getNotificationId()));
+                PublishResult queued = new PublishResult();
+                queued.add(ChannelResult.queued(key.roomId));
+                batch.result.set(queued);
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to add combined notifications for " + key + " to the Slack outbox, posting them directly", e);
+            }
+        }
+        StandardSlackService service = new StandardSlackService(key.webhook.getTeamDomain(), key.webhook.getToken(), key.roomId);
+        if (batch.endpoint != null) {
+            service.setEndpoint(batch.endpoint);
+        }
+        final ListenableFuture<PublishResult> posted = service.postAsync(batch.messages, batch.getNotificationId());
+        posted.addListener(new Runnable() {
+            public void run() {
+                try {
+                    PublishResult result = posted.get();
+                    if (!result.isSuccess()) {
+                        logger.warning("Unable to post " + batch.messages.size() + " combined notification(s) to " + key + ": " + result);
+                    }
+                    batch.result.set(result);
+                } catch (ExecutionException e) {
+                    logger.log(Level.WARNING, "Unable to post combined notifications to " + key, e.getCause());
+                    batch.result.setException(e.getCause());
+                } catch (InterruptedException e) {
+                    // cannot happen, the future is done
+                    Thread.currentThread().interrupt();
+                    batch.result.setException(e);
+                }
+            }
+        }, StandardSlackService.SAME_THREAD);
+    }
+
+    private static final class Key {
+        private final Webhook webhook;
+        private final String roomId;
+
+        Key(Webhook webhook, String roomId) {
+            this.webhook = webhook;
+            this.roomId = roomId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return webhook.equals(other.webhook) && roomId.equals(other.roomId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * webhook.hashCode() + roomId.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return roomId + " on " + webhook;
+        }
+    }
+
+    private static final class Batch {
+        private final Key key;
+        private final String endpoint;
+        private final List<SlackMessage> messages = new ArrayList<SlackMessage>();
+        /**
+         * Of the notifications the messages belong to, in order.
+         */
+        private final Set<String> notificationIds = new LinkedHashSet<String>();
+        private final SettableFuture<PublishResult> result = SettableFuture.create();
+        private ScheduledFuture<?> timer;
+        private boolean flushed;
+
+        Batch(Key key, String endpoint) {
+            this.key = key;
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * @return the ids of the combined notifications, so each of them can be found in the post logs
+         */
+        String getNotificationId() {
+            notificationIds.remove(NotificationLog.NO_NOTIFICATION);
+            return notificationIds.isEmpty() ? NotificationLog.NO_NOTIFICATION : Util.join(notificationIds, ",");
+        }
+    }
+
+    /**
+     * Both the window timer and a full batch flush the batch, whichever runs first sends it.
+     */
+    private static final class Flush implements Runnable {
+        private final Batch batch;
+
+        Flush(Batch batch) {
+            this.batch = batch;
+        }
+
+        public void run() {
+            synchronized (pending) {
+                if (batch.flushed) {
+                    return;
+                }
+                batch.flushed = true;
+                if (pending.get(batch.key) == batch) {
+                    pending.remove(batch.key);
+                }
+            }
+            try {
+                send(batch);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Unable to post combined notifications to " + batch.key, e);
+                batch.result.setException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package jenkins.plugins.slack;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names the plugin's background threads and keeps them from holding up a Jenkins shutdown.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger();
+
+    DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + " #" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
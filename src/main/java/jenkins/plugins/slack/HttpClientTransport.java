@@ -0,0 +1,42 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.PostMethod;
+
+import java.io.IOException;
+
+/**
+ * Posts with commons-httpclient on the calling thread, through the connections of {@link PooledHttpClient}.
+ */
+final class HttpClientTransport extends SlackTransport {
+
+    static final String ID = "httpclient";
+
+    @Override
+    String getId() {
+        return ID;
+    }
+
+    /**
+     * @return a future that is already done
+     */
+    @Override
+    ListenableFuture<Response> post(String url, JsonPayload payload) {
+        PostMethod post = new PostMethod(url);
+        try {
+            post.setRequestEntity(payload);
+            int statusCode = PooledHttpClient.get().executeMethod(post);
+            String body = post.getResponseBodyAsString();
+            Header retryAfter = post.getResponseHeader("Retry-After");
+            return Futures.immediateFuture(new Response(statusCode, body, retryAfter != null ? retryAfter.getValue() : null));
+        } catch (IOException e) {
+            return Futures.immediateFailedFuture(e);
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        } finally {
+            post.releaseConnection();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The JSON body of a post to one channel, sent as application/json.
+ *
+ * The attachments are written once per message straight to UTF-8 bytes in a buffer kept by each thread, without
+ * an intermediate object tree, strings or form encoding. Every channel then sends the same bytes between the
+ * precomputed parts of the payload.
+ */
+final class JsonPayload implements RequestEntity {
+
+    static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private static final byte[] CHANNEL = ascii("{\"channel\":");
+    private static final byte[] ATTACHMENTS = ascii(",\"attachments\":");
+    private static final byte[] END = ascii("}");
+
+    private static final byte[] FALLBACK = ascii("\"fallback\":");
+    private static final byte[] COLOR = ascii("\"color\":");
+    private static final byte[] FIELDS = ascii("\"fields\":[{\"short\":false");
+    private static final byte[] VALUE = ascii(",\"value\":");
+    private static final byte[] FIELDS_END = ascii("}]}");
+
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    /**
+     * Buffers that grew beyond this are not kept, so a huge commit list does not pin memory in every thread.
+     */
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer(4096);
+        }
+    };
+
+    private final byte[] channel;
+    private final byte[] attachments;
+
+    JsonPayload(String roomId, byte[] attachments) {
+        Buffer buffer = buffer();
+        buffer.string(roomId);
+        this.channel = buffer.toByteArray();
+        this.attachments = attachments;
+    }
+
+    /**
+     * @return the JSON array of attachments, one per message
+     */
+    static byte[] attachments(List<SlackMessage> messages) {
+        Buffer buffer = buffer();
+        buffer.write('[');
+        for (int i = 0; i < messages.size(); i++) {
+            SlackMessage message = messages.get(i);
+            if (i > 0) {
+                buffer.write(',');
+            }
+            buffer.write('{');
+            boolean first = true;
+            if (message.getText() != null) {
+                buffer.write(FALLBACK);
+                buffer.string(message.getText());
+                first = false;
+            }
+            if (message.getColor() != null) {
+                if (!first) {
+                    buffer.write(',');
+                }
+                buffer.write(COLOR);
+                buffer.string(message.getColor());
+                first = false;
+            }
+            if (!first) {
+                buffer.write(',');
+            }
+            buffer.write(FIELDS);
+            if (message.getText() != null) {
+                buffer.write(VALUE);
+                buffer.string(message.getText());
+            }
+            buffer.write(FIELDS_END);
+        }
+        buffer.write(']');
+        return buffer.toByteArray();
+    }
+
+    private static Buffer buffer() {
+        Buffer buffer = buffers.get();
+        if (buffer.bytes.length > MAX_RETAINED_BUFFER) {
+            buffer = new Buffer(4096);
+            buffers.set(buffer);
+        }
+        buffer.size = 0;
+        return buffer;
+    }
+
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    public void writeRequest(OutputStream out) throws IOException {
+        out.write(CHANNEL);
+        out.write(channel);
+        out.write(ATTACHMENTS);
+        out.write(attachments);
+        out.write(END);
+    }
+
+    public long getContentLength() {
+        return CHANNEL.length + channel.length + ATTACHMENTS.length + attachments.length + END.length;
+    }
+
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    /**
+     * @return the body in the pieces it is written from, shared with every other channel, not to be modified
+     */
+    byte[][] parts() {
+        return new byte[][] {CHANNEL, channel, ATTACHMENTS, attachments, END};
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return new String(CHANNEL, "UTF-8") + new String(channel, "UTF-8") + new String(ATTACHMENTS, "UTF-8")
+                    + new String(attachments, "UTF-8") + new String(END, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        try {
+            return s.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Buffer {
+        private byte[] bytes;
+        private int size;
+
+        Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        /**
+         * Writes the string as a quoted JSON string in UTF-8, escaping what org.json's quote() escapes.
+         */
+        void string(String s) {
+            // every char takes at most 6 bytes (\\uXXXX), so one check covers the whole string
+            ensure(s.length() * 6 + 2);
+            byte[] b = bytes;
+            int n = size;
+            b[n++] = '"';
+            char previous = 0;
+            for (int i = 0, length = s.length(); i < length; i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\' || (c == '/' && previous == '<')) {
+                    b[n++] = '\\';
+                    b[n++] = (byte) c;
+                } else if (c >= 0x20 && c < 0x80) {
+                    b[n++] = (byte) c;
+                } else if (c == '\n') {
+                    b[n++] = '\\';
+                    b[n++] = 'n';
+                } else if (c == '\t') {
+                    b[n++] = '\\';
+                    b[n++] = 't';
+                } else if (c == '\r') {
+                    b[n++] = '\\';
+                    b[n++] = 'r';
+                } else if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                    b[n++] = '\\';
+                    b[n++] = 'u';
+                    b[n++] = HEX[(c >> 12) & 0xf];
+                    b[n++] = HEX[(c >> 8) & 0xf];
+                    b[n++] = HEX[(c >> 4) & 0xf];
+                    b[n++] = HEX[c & 0xf];
+                } else if (c < 0x800) {
+                    b[n++] = (byte) (0xc0 | (c >> 6));
+                    b[n++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    b[n++] = (byte) (0xf0 | (codePoint >> 18));
+                    b[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    b[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    b[n++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    // unpaired, like String.getBytes
+                    b[n++] = '?';
+                } else {
+                    b[n++] = (byte) (0xe0 | (c >> 12));
+                    b[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    b[n++] = (byte) (0x80 | (c & 0x3f));
+                }
+                previous = c;
+            }
+            b[n++] = '"';
+            size = n;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in fixed buckets, cheap enough to record on every post without locking.
+ *
+ * Percentiles are the upper bound of the bucket they fall in, which is precise enough to tell a healthy webhook
+ * (tens of milliseconds) from a degraded one (seconds).
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in milliseconds, the last bucket takes everything above.
+     */
+    static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    private static int bucket(long millis) {
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            if (millis < BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS_MILLIS.length;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / n);
+    }
+
+    public long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    public long getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    public long getP95Millis() {
+        return getPercentileMillis(95);
+    }
+
+    public long getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the percentile, or the maximum for the last bucket
+     */
+    public long getPercentileMillis(double percentile) {
+        long n = 0;
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * n);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MILLIS[i], Math.max(1, getMaxMillis()));
+            }
+        }
+        return getMaxMillis();
+    }
+
+    JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("count", getCount());
+        json.put("meanMillis", getMeanMillis());
+        json.put("p50Millis", getP50Millis());
+        json.put("p95Millis", getP95Millis());
+        json.put("p99Millis", getP99Millis());
+        json.put("maxMillis", getMaxMillis());
+        JSONObject histogram = new JSONObject();
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            histogram.put("lt" + BOUNDS_MILLIS[i], buckets.get(i));
+        }
+        histogram.put("ge" + BOUNDS_MILLIS[BOUNDS_MILLIS.length - 1], buckets.get(BOUNDS_MILLIS.length));
+        json.put("buckets", histogram);
+        return json;
+    }
+}
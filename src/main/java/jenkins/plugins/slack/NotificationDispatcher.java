@@ -0,0 +1,201 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs Slack notification tasks off the build thread.
+ *
+ * Pending tasks wait in a bounded queue ordered by {@link Priority}, so failures and back to normal notifications
+ * are sent ahead of successes and build starts. {@link #dispatch} never waits for room in the queue and never
+ * throws: when the queue is full the oldest task of the lowest pending priority is dropped to make room, or the
+ * new task itself if nothing pending is less important. Dropped tasks are counted.
+ */
+public class NotificationDispatcher {
+
+    private static final Logger logger = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    static final int THREADS = Integer.getInteger(NotificationDispatcher.class.getName() + ".threads", 10);
+    static final int CAPACITY = Integer.getInteger(NotificationDispatcher.class.getName() + ".capacity", 500);
+
+    private static final NotificationDispatcher instance = new NotificationDispatcher("Slack notifier", THREADS, CAPACITY);
+
+    private final DaemonThreadFactory threadFactory;
+    private final int threads;
+    private final int capacity;
+    private final ArrayDeque<Queued>[] queues;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int size;
+    private int startedThreads;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    NotificationDispatcher(String name, int threads, int capacity) {
+        this.threadFactory = new DaemonThreadFactory(name);
+        this.threads = threads;
+        this.capacity = capacity;
+        this.queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<Queued>();
+        }
+    }
+
+    public static NotificationDispatcher get() {
+        return instance;
+    }
+
+    /**
+     * Queues a task without blocking.
+     *
+     * @return false if the task was dropped because the queue is full of tasks at least as important
+     */
+    public boolean dispatch(Runnable task, Priority priority) {
+        try {
+            lock.lock();
+            try {
+                if (size >= capacity && !evictLowerThan(priority)) {
+                    dropped.incrementAndGet();
+                    logger.warning("Slack notification queue is full, dropping " + priority + " priority notification");
+                    return false;
+                }
+                queues[priority.ordinal()].addLast(new Queued(task));
+                size++;
+                queued.incrementAndGet();
+                if (startedThreads < threads) {
+                    startWorker();
+                }
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException e) {
+            dropped.incrementAndGet();
+            logger.log(Level.WARNING, "Unable to queue Slack notification", e);
+            return false;
+        }
+    }
+
+    private boolean evictLowerThan(Priority priority) {
+        for (int i = queues.length - 1; i > priority.ordinal(); i--) {
+            if (!queues[i].isEmpty()) {
+                queues[i].pollFirst();
+                size--;
+                dropped.incrementAndGet();
+                logger.warning("Slack notification queue is full, dropping a pending " + Priority.values()[i] + " priority notification");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startWorker() {
+        startedThreads++;
+        threadFactory.newThread(new Worker()).start();
+    }
+
+    private Queued take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            for (ArrayDeque<Queued> queue : queues) {
+                Queued task = queue.pollFirst();
+                if (task != null) {
+                    size--;
+                    return task;
+                }
+            }
+            throw new IllegalStateException("Queue size is " + size + " but all priorities are empty");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many threads are running a task
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return how many threads were started, they are started as tasks come in up to {@link #THREADS}
+     */
+    public int getThreadCount() {
+        lock.lock();
+        try {
+            return startedThreads;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private class Worker implements Runnable {
+        public void run() {
+            while (true) {
+                Queued task;
+                try {
+                    task = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                SlackMetrics.get().recordQueueWait(System.nanoTime() - task.queuedAt);
+                active.incrementAndGet();
+                try {
+                    task.task.run();
+                } catch (Throwable t) {
+                    failed.incrementAndGet();
+                    logger.log(Level.WARNING, "Slack notification failed", t);
+                } finally {
+                    active.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static final class Queued {
+        private final Runnable task;
+        private final long queuedAt = System.nanoTime();
+
+        Queued(Runnable task) {
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package jenkins.plugins.slack;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Logs what happens to each notification, as an event name followed by key=value fields, all tagged with the id
+ * of the notification they belong to.
+ *
+ * Everything goes to the {@code jenkins.plugins.slack.notifications} logger, so a Jenkins log recorder on it
+ * controls the volume separately from the rest of the plugin. Per post events are logged at FINE, and nothing is
+ * formatted unless the level is enabled. Warnings that can repeat for every post, like a failing webhook, are
+ * sampled. Webhook tokens are never logged.
+ */
+final class NotificationLog {
+
+    static final Logger logger = Logger.getLogger("jenkins.plugins.slack.notifications");
+
+    /**
+     * Only one in this many of the sampled warnings is logged, 1 (or less) logs all of them.
+     */
+    static final int SAMPLE_EVERY = Math.max(1, Integer.getInteger(NotificationLog.class.getName() + ".sampleEvery", 10));
+
+    /**
+     * Logged for posts that do not belong to a notification, like the test post of the configuration page.
+     */
+    static final String NO_NOTIFICATION = "-";
+
+    private static final Pattern TOKEN = Pattern.compile("(token=)[^&]*");
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    private static final ThreadLocal<String> current = new ThreadLocal<String>();
+
+    private NotificationLog() {
+    }
+
+    /**
+     * Starts a notification on this thread, the posts it makes here are logged with its id.
+     *
+     * @return the id of the notification
+     */
+    static String begin() {
+        String id = Long.toString(ids.incrementAndGet(), 36);
+        current.set(id);
+        return id;
+    }
+
+    static void end() {
+        current.remove();
+    }
+
+    /**
+     * Services read this where a notification is handed to them and carry the id along with the messages from
+     * there, since posts may happen later on other threads.
+     *
+     * @return the id of the notification started on this thread, or {@link #NO_NOTIFICATION}
+     */
+    static String currentId() {
+        String id = current.get();
+        return id != null ? id : NO_NOTIFICATION;
+    }
+
+    static boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    /**
+     * @param fields alternating names and values
+     */
+    static void log(Level level, String event, String id, Object... fields) {
+        log(level, event, id, null, fields);
+    }
+
+    static void log(Level level, String event, String id, Throwable error, Object... fields) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, format(event, id, fields), error);
+        }
+    }
+
+    static String format(String event, String id, Object... fields) {
+        StringBuilder message = new StringBuilder(64).append(event).append(" id=").append(id);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            message.append(' ').append(fields[i]).append('=').append(fields[i + 1]);
+        }
+        return message.toString();
+    }
+
+    /**
+     * @return the URL with the value of its token parameter masked
+     */
+    static String redact(String url) {
+        return url != null ? TOKEN.matcher(url).replaceAll("$1****") : null;
+    }
+
+    /**
+     * An event logged only once every {@link #SAMPLE_EVERY} times, with the count of all occurrences.
+     */
+    static final class Sampled {
+        private final String event;
+        private final AtomicLong count = new AtomicLong();
+
+        Sampled(String event) {
+            this.event = event;
+        }
+
+        void log(Level level, String id, Throwable error, Object... fields) {
+            long n = count.incrementAndGet();
+            if ((n - 1) % SAMPLE_EVERY == 0 && logger.isLoggable(level)) {
+                logger.log(level, format(event, id, fields) + " occurrences=" + n, error);
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+    }
+}
@@ -0,0 +1,711 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.model.Jenkins;
+import jenkins.plugins.slack.PublishResult.ChannelResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only journal of rendered notifications under {@code $JENKINS_HOME/slack-outbox}.
+ *
+ * Entries are appended to numbered segment files and handed to delivery lanes, which acknowledge an entry once
+ * Slack accepted it or rejected it for good. The lowest unacknowledged position is persisted in the
+ * {@code ack} file and segments before it, or whose own entries are all acknowledged, are deleted. On startup every
+ * entry from that position on is delivered again, so an appended entry survives restarts and Slack outages; it may
+ * be posted twice, never lost. An entry Slack has not taken after {@link #MAX_ATTEMPTS} tries or within
+ * {@link #MAX_AGE_MILLIS}, or whose post failed with an error, is written without its webhook token to the
+ * {@code dead-letters.log} file and acknowledged, so a dead webhook or a circuit breaker that stays open does not
+ * hold the others back for good. That file is kept to about {@link #DEAD_LETTER_BYTES}, the one before it is kept
+ * as {@code dead-letters.log.1}.
+ *
+ * Appends do not wait for the disk, written entries are forced to disk in batches every
+ * {@link #SYNC_INTERVAL_MILLIS}. Every channel has its own lane that sends one entry at a time, so entries for one
+ * channel are delivered in the order they were appended and a channel that cannot be reached only holds up itself.
+ * Sending never blocks a thread: lanes move on when the post completes, and entries Slack could not take are tried
+ * again {@link #RETRY_DELAY_MILLIS} later.
+ */
+public class Outbox {
+
+    private static final Logger logger = Logger.getLogger(Outbox.class.getName());
+
+    static final boolean DISABLED = Boolean.getBoolean(Outbox.class.getName() + ".disabled");
+    static final long SEGMENT_BYTES = Long.getLong(Outbox.class.getName() + ".segmentBytes", 8L * 1024 * 1024);
+    static final long SYNC_INTERVAL_MILLIS = Long.getLong(Outbox.class.getName() + ".syncInterval", 100L);
+    static final long RETRY_DELAY_MILLIS = Long.getLong(Outbox.class.getName() + ".retryDelay", 30000L);
+    /**
+     * Tries per entry since the last start, about an hour with the default retry delay.
+     */
+    static final int MAX_ATTEMPTS = Integer.getInteger(Outbox.class.getName() + ".maxAttempts", 120);
+    static final long MAX_AGE_MILLIS = Long.getLong(Outbox.class.getName() + ".maxAge", TimeUnit.HOURS.toMillis(24));
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACK_FILE = "ack";
+    private static final String DEAD_LETTER_FILE = "dead-letters.log";
+    /**
+     * Once the dead letter file is this big it replaces the previous one, {@code dead-letters.log.1}.
+     */
+    static final long DEAD_LETTER_BYTES = Long.getLong(Outbox.class.getName() + ".deadLetterBytes", 8L * 1024 * 1024);
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024 * 1024;
+
+    private static Outbox instance;
+    private static boolean unavailable;
+
+    /**
+     * Delivers entries without blocking the caller.
+     */
+    interface Sender {
+        /**
+         * @return completes with true once the entry is delivered or can never be, false to keep it and try again
+         * later
+         */
+        ListenableFuture<Boolean> send(OutboxEntry entry);
+    }
+
+    private final File directory;
+    private final Sender sender;
+    private final long segmentBytes;
+
+    private final Object writeLock = new Object();
+    private long segment;
+    private RandomAccessFile file;
+    private long position;
+    private boolean dirty;
+
+    /**
+     * Offsets of appended entries that are not acknowledged yet. Guarded by itself, taken after writeLock.
+     */
+    private final TreeSet<Long> unacknowledged = new TreeSet<Long>();
+    /**
+     * Unacknowledged entries per segment, segments without any are absent. Guarded by unacknowledged.
+     */
+    private final Map<Long, Integer> liveEntries = new HashMap<Long, Integer>();
+    private boolean segmentEmptied;
+    private final Object deadLetterLock = new Object();
+    private long persistedAck = -1;
+
+    /**
+     * Lanes of the channels that have entries in flight. Guarded by itself, which also guards the lanes' state.
+     */
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+    /**
+     * Syncs the journal and drives the lanes, which never block it: senders answer with a future.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Slack outbox"));
+    private final Executor laneExecutor = new Executor() {
+        public void execute(Runnable command) {
+            try {
+                scheduler.execute(command);
+            } catch (RejectedExecutionException e) {
+                // closed, whatever is unacknowledged is delivered after the next start
+            }
+        }
+    };
+    private volatile boolean closed;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    Outbox(File directory, Sender sender, long segmentBytes) {
+        this.directory = directory;
+        this.sender = sender;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * @return the outbox of this Jenkins instance, or null if there is none and notifications have to be sent directly
+     */
+    public static synchronized Outbox get() {
+        if (instance == null && !unavailable && !DISABLED) {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return null;
+            }
+            try {
+                instance = open(new File(jenkins.getRootDir(), "slack-outbox"), new SlackSender(), SEGMENT_BYTES);
+            } catch (IOException e) {
+                unavailable = true;
+                logger.log(Level.WARNING, "Unable to open the Slack outbox, notifications will be sent without it", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Resumes delivery of whatever was left in the outbox when Jenkins stopped.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resumeDelivery() {
+        get();
+    }
+
+    static Outbox open(File directory, Sender sender, long segmentBytes) throws IOException {
+        Outbox outbox = new Outbox(directory, sender, segmentBytes);
+        outbox.start();
+        return outbox;
+    }
+
+    private void start() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        long ack = readAck();
+        List<Record> recovered = new ArrayList<Record>();
+        List<Long> segments = listSegments();
+        for (long existing : segments) {
+            if (existing < segmentOf(ack)) {
+                deleteSegment(existing);
+            } else {
+                recover(existing, existing == segmentOf(ack) ? positionOf(ack) : 0, recovered);
+            }
+        }
+
+        synchronized (writeLock) {
+            segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+            file = new RandomAccessFile(segmentFile(segment), "rw");
+            position = 0;
+        }
+        synchronized (unacknowledged) {
+            for (Record record : recovered) {
+                addUnacknowledged(record.offset);
+            }
+        }
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sync();
+            }
+        }, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        if (!recovered.isEmpty()) {
+            logger.info("Resuming delivery of " + recovered.size() + " Slack notification(s) from " + directory);
+        }
+        for (Record record : recovered) {
+            addToLane(record);
+        }
+    }
+
+    /**
+     * Journals the entry and queues it for delivery. Returns once the entry is written, not once it is on disk.
+     */
+    public void append(OutboxEntry entry) throws IOException {
+        ByteBuffer buffer = encode(entry);
+        Record record;
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IOException("The Slack outbox is closed");
+            }
+            if (position >= segmentBytes) {
+                roll();
+            }
+            long offset = offset(segment, position);
+            FileChannel channel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            position += buffer.capacity();
+            dirty = true;
+            synchronized (unacknowledged) {
+                addUnacknowledged(offset);
+            }
+            record = new Record(offset, entry);
+        }
+        appended.incrementAndGet();
+        addToLane(record);
+    }
+
+    /**
+     * @return the entry with its length and checksum header
+     */
+    private static ByteBuffer encode(OutboxEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        entry.writeTo(out);
+        out.flush();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        int length = buffer.capacity() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer;
+    }
+
+    private void addUnacknowledged(long offset) {
+        unacknowledged.add(offset);
+        Integer live = liveEntries.get(segmentOf(offset));
+        liveEntries.put(segmentOf(offset), live != null ? live + 1 : 1);
+    }
+
+    private void roll() throws IOException {
+        file.getChannel().force(false);
+        file.close();
+        segment++;
+        position = 0;
+        dirty = false;
+        file = new RandomAccessFile(segmentFile(segment), "rw");
+    }
+
+    void acknowledge(long offset) {
+        synchronized (unacknowledged) {
+            if (unacknowledged.remove(offset)) {
+                Integer live = liveEntries.get(segmentOf(offset));
+                if (live == null || live <= 1) {
+                    liveEntries.remove(segmentOf(offset));
+                    segmentEmptied = true;
+                } else {
+                    liveEntries.put(segmentOf(offset), live - 1);
+                }
+            }
+        }
+        acknowledged.incrementAndGet();
+    }
+
+    /**
+     * Keeps an entry that could not be delivered in the dead letter file, where it is no longer retried. The
+     * webhook token is left out.
+     *
+     * @param error why the entry failed, or null if it ran out of attempts or time
+     */
+    private void deadLetter(Record record, Throwable error) {
+        logger.log(Level.WARNING, "Giving up on Slack notification after " + record.attempts + " attempt(s), appended "
+                + TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - record.entry.getCreatedAt())
+                + " minute(s) ago: " + record.entry, error);
+        deadLettered.incrementAndGet();
+        try {
+            ByteBuffer buffer = encode(record.entry.withoutToken());
+            synchronized (deadLetterLock) {
+                File file = new File(directory, DEAD_LETTER_FILE);
+                if (file.length() + buffer.capacity() > DEAD_LETTER_BYTES && file.length() > 0) {
+                    File previous = new File(directory, DEAD_LETTER_FILE + ".1");
+                    previous.delete();
+                    if (!file.renameTo(previous)) {
+                        throw new IOException("Unable to rename " + file + " to " + previous);
+                    }
+                }
+                FileOutputStream out = new FileOutputStream(file, true);
+                try {
+                    out.write(buffer.array());
+                } finally {
+                    out.close();
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to write " + record.entry + " to the Slack outbox dead letter file", e);
+        }
+    }
+
+    /**
+     * Forces appended entries to disk, persists the acknowledged position and deletes segments that are
+     * acknowledged entirely.
+     */
+    void sync() {
+        try {
+            FileChannel channel = null;
+            long ack;
+            long currentSegment;
+            boolean emptied;
+            List<Long> live;
+            synchronized (writeLock) {
+                if (file == null) {
+                    return;
+                }
+                if (dirty) {
+                    channel = file.getChannel();
+                    dirty = false;
+                }
+                currentSegment = segment;
+                synchronized (unacknowledged) {
+                    ack = unacknowledged.isEmpty() ? offset(segment, position) : unacknowledged.first();
+                    emptied = segmentEmptied;
+                    segmentEmptied = false;
+                    live = new ArrayList<Long>(liveEntries.keySet());
+                }
+            }
+            if (channel != null) {
+                try {
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // rolled over in the meantime, roll() forced it before closing
+                }
+            }
+            boolean ackChanged = ack != persistedAck;
+            if (ackChanged) {
+                writeAck(ack);
+                persistedAck = ack;
+            }
+            if (ackChanged || emptied) {
+                // a segment after the ack position is not needed either once its own entries are acknowledged, segments
+                // from the snapshot on may have been rolled to since and are left alone
+                for (long existing : listSegments()) {
+                    if (existing < currentSegment && (existing < segmentOf(ack) || !live.contains(existing))) {
+                        deleteSegment(existing);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to sync the Slack outbox", e);
+        }
+    }
+
+    void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        synchronized (writeLock) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to close the Slack outbox", e);
+            }
+        }
+    }
+
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    public long getAcknowledgedCount() {
+        return acknowledged.get();
+    }
+
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    /**
+     * @return the number of entries given up on after {@link #MAX_ATTEMPTS} or {@link #MAX_AGE_MILLIS}
+     */
+    public long getDeadLetteredCount() {
+        return deadLettered.get();
+    }
+
+    public int getPendingCount() {
+        synchronized (unacknowledged) {
+            return unacknowledged.size();
+        }
+    }
+
+    private void addToLane(Record record) {
+        OutboxEntry entry = record.entry;
+        String key = entry.getTeamDomain() + '\n' + entry.getToken() + '\n' + entry.getRoom();
+        final Lane lane;
+        synchronized (lanes) {
+            Lane existing = lanes.get(key);
+            if (existing != null) {
+                existing.queue.add(record);
+                return;
+            }
+            lane = new Lane(key);
+            lane.queue.add(record);
+            lanes.put(key, lane);
+        }
+        laneExecutor.execute(new Runnable() {
+            public void run() {
+                lane.sendNext();
+            }
+        });
+    }
+
+    /**
+     * @return the number of channels with entries waiting for delivery
+     */
+    public int getLaneCount() {
+        synchronized (lanes) {
+            return lanes.size();
+        }
+    }
+
+    private void recover(long segmentNumber, long start, List<Record> recovered) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(segmentFile(segmentNumber), "rw");
+        try {
+            long length = in.length();
+            long pos = start;
+            while (pos + HEADER_BYTES <= length) {
+                in.seek(pos);
+                int recordLength = in.readInt();
+                int checksum = in.readInt();
+                if (recordLength < 0 || recordLength > MAX_RECORD_BYTES || pos + HEADER_BYTES + recordLength > length) {
+                    break;
+                }
+                byte[] body = new byte[recordLength];
+                in.readFully(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                recovered.add(new Record(offset(segmentNumber, pos), OutboxEntry.readFrom(new DataInputStream(new ByteArrayInputStream(body)))));
+                pos += HEADER_BYTES + recordLength;
+            }
+            if (pos < length) {
+                logger.warning("Discarding " + (length - pos) + " unreadable byte(s) at the end of " + segmentFile(segmentNumber));
+                in.setLength(pos);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private long readAck() throws IOException {
+        File ackFile = new File(directory, ACK_FILE);
+        if (!ackFile.exists()) {
+            return offset(0, 0);
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(ackFile));
+        try {
+            return in.readLong();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeAck(long ack) throws IOException {
+        File tmp = new File(directory, ACK_FILE + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeLong(ack);
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        File ackFile = new File(directory, ACK_FILE);
+        if (!tmp.renameTo(ackFile)) {
+            // Windows does not rename over an existing file
+            ackFile.delete();
+            if (!tmp.renameTo(ackFile)) {
+                throw new IOException("Unable to rename " + tmp + " to " + ackFile);
+            }
+        }
+    }
+
+    private List<Long> listSegments() {
+        String[] names = directory.list();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<Long> segments = new ArrayList<Long>();
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not ours
+                }
+            }
+        }
+        Long[] sorted = segments.toArray(new Long[segments.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    private File segmentFile(long segmentNumber) {
+        return new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    private void deleteSegment(long segmentNumber) {
+        File segmentFile = segmentFile(segmentNumber);
+        if (!segmentFile.delete()) {
+            logger.warning("Unable to delete " + segmentFile);
+        }
+    }
+
+    static long offset(long segment, long position) {
+        return (segment << 32) | position;
+    }
+
+    static long segmentOf(long offset) {
+        return offset >>> 32;
+    }
+
+    static long positionOf(long offset) {
+        return offset & 0xFFFFFFFFL;
+    }
+
+    private static final class Record {
+        private final long offset;
+        private final OutboxEntry entry;
+        /**
+         * Failed tries since the last start, only touched by the entry's lane.
+         */
+        private int attempts;
+
+        Record(long offset, OutboxEntry entry) {
+            this.offset = offset;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Sends the entries of one channel one at a time, in the order they were appended. Exists while the channel has
+     * entries in flight.
+     */
+    private class Lane {
+        private final String key;
+        private final Queue<Record> queue = new ArrayDeque<Record>();
+
+        Lane(String key) {
+            this.key = key;
+        }
+
+        private void sendNext() {
+            final Record record;
+            synchronized (lanes) {
+                record = queue.peek();
+                if (record == null || closed) {
+                    lanes.remove(key);
+                    return;
+                }
+            }
+            final ListenableFuture<Boolean> future;
+            try {
+                future = sender.send(record.entry);
+            } catch (RuntimeException e) {
+                deadLetter(record, e);
+                done(record);
+                return;
+            }
+            future.addListener(new Runnable() {
+                public void run() {
+                    try {
+                        if (future.get()) {
+                            done(record);
+                        } else if (++record.attempts >= MAX_ATTEMPTS
+                                || System.currentTimeMillis() - record.entry.getCreatedAt() >= MAX_AGE_MILLIS) {
+                            deadLetter(record, null);
+                            done(record);
+                        } else {
+                            retried.incrementAndGet();
+                            scheduler.schedule(new Runnable() {
+                                public void run() {
+                                    sendNext();
+                                }
+                            }, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                        }
+                    } catch (ExecutionException e) {
+                        deadLetter(record, e.getCause());
+                        done(record);
+                    } catch (InterruptedException e) {
+                        deadLetter(record, e);
+                        done(record);
+                    } catch (RejectedExecutionException e) {
+                        // closed, the entry is delivered after the next start
+                    }
+                }
+            }, laneExecutor);
+        }
+
+        /**
+         * Moves on to the next entry. It is sent from the executor rather than this stack, or a run of entries whose
+         * sender throws would recurse.
+         */
+        private void done(Record record) {
+            acknowledge(record.offset);
+            synchronized (lanes) {
+                queue.poll();
+            }
+            laneExecutor.execute(new Runnable() {
+                public void run() {
+                    sendNext();
+                }
+            });
+        }
+    }
+
+    /**
+     * Posts entries to Slack. Entries are kept while Slack cannot be reached or reports a temporary problem.
+     */
+    static class SlackSender implements Sender {
+        /**
+         * The lanes retry entries themselves, the service must not retry each of those attempts again.
+         */
+        static final RetryPolicy SINGLE_ATTEMPT = new RetryPolicy(1, 0, 0, new Random());
+
+        public ListenableFuture<Boolean> send(final OutboxEntry entry) {
+            StandardSlackService service = new StandardSlackService(entry.getTeamDomain(), entry.getToken(), entry.getRoom());
+            service.setRetryPolicy(SINGLE_ATTEMPT);
+            final ListenableFuture<PublishResult> posted = service.postAsync(entry.getMessages(), entry.getNotificationId());
+            final SettableFuture<Boolean> done = SettableFuture.create();
+            posted.addListener(new Runnable() {
+                public void run() {
+                    try {
+                        done.set(isDone(entry, posted.get()));
+                    } catch (Exception e) {
+                        done.setException(e);
+                    }
+                }
+            }, SAME_THREAD);
+            return done;
+        }
+
+        /**
+         * Temporary failures, including a rejection by an open {@link CircuitBreaker}, keep the entry. The lane
+         * gives up on it once it used up {@link #MAX_ATTEMPTS} or {@link #MAX_AGE_MILLIS}.
+         */
+        private static boolean isDone(OutboxEntry entry, PublishResult result) {
+            if (result.isSuccess()) {
+                return true;
+            }
+            for (ChannelResult failure : result.getFailures()) {
+                if (RetryPolicy.isRetryable(failure)) {
+                    return false;
+                }
+            }
+            logger.warning("Giving up on Slack notification: " + entry + ": " + result);
+            return true;
+        }
+    }
+
+    private static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+}
@@ -0,0 +1,131 @@
+package jenkins.plugins.slack;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A rendered notification waiting in the {@link Outbox}: where it goes and the messages to post there.
+ */
+public class OutboxEntry {
+
+    private final String teamDomain;
+    private final String token;
+    private final String room;
+    private final List<SlackMessage> messages;
+    private final long createdAt;
+    private final String notificationId;
+
+    public OutboxEntry(String teamDomain, String token, String room, List<SlackMessage> messages) {
+        this(teamDomain, token, room, messages, NotificationLog.NO_NOTIFICATION);
+    }
+
+    public OutboxEntry(String teamDomain, String token, String room, List<SlackMessage> messages, String notificationId) {
+        this(teamDomain, token, room, messages, System.currentTimeMillis(), notificationId);
+    }
+
+    OutboxEntry(String teamDomain, String token, String room, List<SlackMessage> messages, long createdAt,
+                String notificationId) {
+        this.teamDomain = teamDomain;
+        this.token = token;
+        this.room = room;
+        this.messages = Collections.unmodifiableList(new ArrayList<SlackMessage>(messages));
+        this.createdAt = createdAt;
+        this.notificationId = notificationId;
+    }
+
+    public String getTeamDomain() {
+        return teamDomain;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public List<SlackMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return when the entry was appended, in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return the id the notification is logged with, see {@link NotificationLog}
+     */
+    public String getNotificationId() {
+        return notificationId;
+    }
+
+    /**
+     * @return this entry with the webhook token left out
+     */
+    OutboxEntry withoutToken() {
+        return new OutboxEntry(teamDomain, null, room, messages, createdAt, notificationId);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        writeString(out, teamDomain);
+        writeString(out, token);
+        writeString(out, room);
+        out.writeInt(messages.size());
+        for (SlackMessage message : messages) {
+            writeString(out, message.getText());
+            writeString(out, message.getColor());
+        }
+        out.writeLong(createdAt);
+        writeString(out, notificationId);
+    }
+
+    static OutboxEntry readFrom(DataInput in) throws IOException {
+        String teamDomain = readString(in);
+        String token = readString(in);
+        String room = readString(in);
+        int count = in.readInt();
+        List<SlackMessage> messages = new ArrayList<SlackMessage>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new SlackMessage(readString(in), readString(in)));
+        }
+        long createdAt = in.readLong();
+        String notificationId = readString(in);
+        return new OutboxEntry(teamDomain, token, room, messages, createdAt, notificationId);
+    }
+
+    /**
+     * Unlike {@link DataOutput#writeUTF} this is not limited to 64k, commit lists can be longer than that.
+     */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return messages.size() + " message(s) of notification " + notificationId + " to " + room + " on " + new Webhook(teamDomain, token);
+    }
+}
@@ -0,0 +1,78 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import jenkins.plugins.slack.PublishResult.ChannelResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands notifications to the {@link Outbox} instead of posting them, one entry per channel.
+ *
+ * {@link #publish} reports true once the notification is journaled; if the outbox cannot take it, it is posted
+ * directly instead.
+ */
+public class OutboxSlackService implements SlackService {
+
+    private static final Logger logger = Logger.getLogger(OutboxSlackService.class.getName());
+
+    private final Outbox outbox;
+    private final String teamDomain;
+    private final String token;
+    private final String[] roomIds;
+
+    public OutboxSlackService(Outbox outbox, String teamDomain, String token, String roomId) {
+        this.outbox = outbox;
+        this.teamDomain = teamDomain;
+        this.token = token;
+        this.roomIds = roomId.split("[,; ]+");
+    }
+
+    public boolean publish(String message) {
+        return publish(message, "warning");
+    }
+
+    public boolean publish(String message, String color) {
+        boolean success = true;
+        String id = NotificationLog.currentId();
+        for (String roomId : roomIds) {
+            try {
+                outbox.append(new OutboxEntry(teamDomain, token, roomId, Collections.singletonList(new SlackMessage(message, color)), id));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to add a notification for " + roomId + " to the Slack outbox, posting it directly", e);
+                success &= new StandardSlackService(teamDomain, token, roomId).publish(message, color);
+            }
+        }
+        return success;
+    }
+
+    public ListenableFuture<PublishResult> publishAsync(String message, String color) {
+        return publishAll(Collections.singletonList(new SlackMessage(message, color)));
+    }
+
+    /**
+     * Journals an entry per channel holding all the messages. The future is done once they are journaled, unless a
+     * channel had to be posted to directly.
+     */
+    public ListenableFuture<PublishResult> publishAll(List<SlackMessage> messages) {
+        List<ListenableFuture<PublishResult>> results = new ArrayList<ListenableFuture<PublishResult>>();
+        PublishResult queued = new PublishResult();
+        String id = NotificationLog.currentId();
+        for (String roomId : roomIds) {
+            try {
+                outbox.append(new OutboxEntry(teamDomain, token, roomId, messages, id));
+                queued.add(ChannelResult.queued(roomId));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to add notifications for " + roomId + " to the Slack outbox, posting them directly", e);
+                results.add(new StandardSlackService(teamDomain, token, roomId).publishAll(messages));
+            }
+        }
+        results.add(Futures.immediateFuture(queued));
+        return PublishResult.combine(results);
+    }
+}
@@ -0,0 +1,108 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import java.util.logging.Logger;
+
+/**
+ * Process-wide HTTP client shared by every {@link StandardSlackService}.
+ *
+ * All clients handed out are backed by a single {@link MultiThreadedHttpConnectionManager}, so keep-alive
+ * connections to {@code <team>.slack.com} are reused between notifications instead of paying a TCP and TLS
+ * handshake per post. The proxy settings are read once and only re-applied after Jenkins saves a new
+ * {@link ProxyConfiguration}.
+ */
+public final class PooledHttpClient {
+
+    private static final Logger logger = Logger.getLogger(PooledHttpClient.class.getName());
+
+    static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger(PooledHttpClient.class.getName() + ".maxConnectionsPerHost", 10);
+    static final int MAX_TOTAL_CONNECTIONS = Integer.getInteger(PooledHttpClient.class.getName() + ".maxTotalConnections", 40);
+    static final int CONNECTION_TIMEOUT_MILLIS = Integer.getInteger(PooledHttpClient.class.getName() + ".connectionTimeout", 10000);
+    static final int SOCKET_TIMEOUT_MILLIS = Integer.getInteger(PooledHttpClient.class.getName() + ".socketTimeout", 30000);
+
+    private static final MultiThreadedHttpConnectionManager connectionManager = createConnectionManager();
+
+    private static volatile HttpClient client;
+
+    private PooledHttpClient() {
+    }
+
+    public static HttpClient get() {
+        HttpClient current = client;
+        if (current == null) {
+            synchronized (PooledHttpClient.class) {
+                current = client;
+                if (current == null) {
+                    current = createHttpClient();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Drops the cached client so that the next call to {@link #get()} picks up the current proxy settings.
+     * Pooled connections are kept, they belong to the connection manager and not to the client.
+     */
+    static void invalidate() {
+        client = null;
+    }
+
+    private static MultiThreadedHttpConnectionManager createConnectionManager() {
+        MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = manager.getParams();
+        params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+        params.setConnectionTimeout(CONNECTION_TIMEOUT_MILLIS);
+        params.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+        params.setStaleCheckingEnabled(true);
+        return manager;
+    }
+
+    private static HttpClient createHttpClient() {
+        HttpClient client = new HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(CONNECTION_TIMEOUT_MILLIS);
+        if (Jenkins.getInstance() != null) {
+            ProxyConfiguration proxy = Jenkins.getInstance().proxy;
+            if (proxy != null) {
+                client.getHostConfiguration().setProxy(proxy.name, proxy.port);
+                String username = proxy.getUserName();
+                String password = proxy.getPassword();
+                // Consider it to be passed if username specified. Sufficient?
+                if (username != null && !"".equals(username.trim())) {
+                    logger.info("Using proxy authentication (user=" + username + ")");
+                    // http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
+                    // and
+                    // http://svn.apache.org/viewvc/httpcomponents/oac.hc3x/trunk/src/examples/BasicAuthenticationExample.java?view=markup
+                    client.getState().setProxyCredentials(AuthScope.ANY,
+                        new UsernamePasswordCredentials(username, password));
+                }
+            }
+        }
+        return client;
+    }
+
+    @Extension
+    public static class ProxyConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof ProxyConfiguration) {
+                logger.info("Proxy configuration changed, refreshing the Slack HTTP client");
+                invalidate();
+            }
+        }
+    }
+}
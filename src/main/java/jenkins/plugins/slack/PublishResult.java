@@ -0,0 +1,188 @@
+package jenkins.plugins.slack;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of posting one message to every channel of a {@link SlackService}.
+ */
+public class PublishResult {
+
+    private final Map<String, ChannelResult> channels = new LinkedHashMap<String, ChannelResult>();
+
+    void add(ChannelResult result) {
+        channels.put(result.getChannel(), result);
+    }
+
+    /**
+     * Adds the results of another post, a channel that failed already keeps its failure.
+     */
+    void addAll(PublishResult other) {
+        for (ChannelResult result : other.channels.values()) {
+            ChannelResult existing = channels.get(result.getChannel());
+            if (existing == null || existing.isSuccess()) {
+                add(result);
+            }
+        }
+    }
+
+    /**
+     * @return the results of all the posts, see {@link #addAll}
+     */
+    static ListenableFuture<PublishResult> combine(List<ListenableFuture<PublishResult>> results) {
+        return Futures.transform(Futures.allAsList(results), new Function<List<PublishResult>, PublishResult>() {
+            public PublishResult apply(List<PublishResult> results) {
+                PublishResult combined = new PublishResult();
+                for (PublishResult result : results) {
+                    combined.addAll(result);
+                }
+                return combined;
+            }
+        }, StandardSlackService.SAME_THREAD);
+    }
+
+    /**
+     * @return true if the message was accepted by every channel
+     */
+    public boolean isSuccess() {
+        if (channels.isEmpty()) {
+            return false;
+        }
+        for (ChannelResult result : channels.values()) {
+            if (!result.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public ChannelResult getChannelResult(String channel) {
+        return channels.get(channel);
+    }
+
+    public List<ChannelResult> getChannelResults() {
+        return Collections.unmodifiableList(new ArrayList<ChannelResult>(channels.values()));
+    }
+
+    public List<ChannelResult> getFailures() {
+        List<ChannelResult> failures = new ArrayList<ChannelResult>();
+        for (ChannelResult result : channels.values()) {
+            if (!result.isSuccess()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return channels.values().toString();
+    }
+
+    public static class ChannelResult {
+
+        static final int NO_RESPONSE = -1;
+
+        private final String channel;
+        private final int statusCode;
+        private final String response;
+        private final Throwable error;
+        private final long retryAfterMillis;
+        private int attempts = 1;
+        private boolean queued;
+
+        ChannelResult(String channel, int statusCode, String response, Throwable error, long retryAfterMillis) {
+            this.channel = channel;
+            this.statusCode = statusCode;
+            this.response = response;
+            this.error = error;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        static ChannelResult response(String channel, int statusCode, String response) {
+            return response(channel, statusCode, response, 0);
+        }
+
+        static ChannelResult response(String channel, int statusCode, String response, long retryAfterMillis) {
+            return new ChannelResult(channel, statusCode, response, null, retryAfterMillis);
+        }
+
+        static ChannelResult error(String channel, Throwable error) {
+            return error(channel, error, 0);
+        }
+
+        static ChannelResult error(String channel, Throwable error, long retryAfterMillis) {
+            return new ChannelResult(channel, NO_RESPONSE, null, error, retryAfterMillis);
+        }
+
+        /**
+         * A post that was written to the {@link Outbox}, which delivers it later.
+         */
+        static ChannelResult queued(String channel) {
+            ChannelResult result = new ChannelResult(channel, NO_RESPONSE, null, null, 0);
+            result.queued = true;
+            return result;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        /**
+         * @return the HTTP status returned by Slack, or -1 if no response was received
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getResponse() {
+            return response;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * @return how long Slack asked to wait before trying again, or 0 if it did not say
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        /**
+         * @return how many attempts it took to get this result
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        void setAttempts(int attempts) {
+            this.attempts = attempts;
+        }
+
+        /**
+         * @return true if the post was queued for later delivery rather than sent
+         */
+        public boolean isQueued() {
+            return queued;
+        }
+
+        public boolean isSuccess() {
+            return statusCode == 200 || queued;
+        }
+
+        @Override
+        public String toString() {
+            String outcome = error != null ? error.toString() : queued ? "queued" : String.valueOf(statusCode);
+            return channel + ": " + outcome + (attempts > 1 ? " after " + attempts + " attempts" : "");
+        }
+    }
+}
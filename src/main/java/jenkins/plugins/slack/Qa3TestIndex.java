@@ -0,0 +1,278 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Project;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Which QA3 test jobs are failing, for the release gate of
+ * {@link ActiveNotifier.MessageBuilder#appendAlertIfAnyOfQa3TestsBuildIsFailing()}.
+ *
+ * QA3 test jobs are the projects whose name matches a configurable pattern. The index is built with a single scan
+ * of the projects on first use, and whenever the pattern changes or Jenkins reloads its jobs; from then on it is
+ * kept up to date from completed builds and renamed or deleted jobs, so the gate never scans every project. The scan
+ * holds no lock that completing builds need, builds that complete meanwhile are applied once it is done.
+ */
+public final class Qa3TestIndex {
+
+    private static final Logger logger = Logger.getLogger(Qa3TestIndex.class.getName());
+
+    /**
+     * Names containing qa3_tests but not experimental (e.g. Responsive_Experimental_QA3_Tests), ignoring case.
+     */
+    public static final String DEFAULT_PATTERN = "(?i)(?!.*experimental).*qa3_tests.*";
+
+    private static final Qa3TestIndex instance = new Qa3TestIndex();
+
+    private volatile Pattern pattern = Pattern.compile(DEFAULT_PATTERN);
+    /**
+     * Null until scanned. Guarded by this, which the scan does not hold so completing builds never wait for it.
+     */
+    private State state;
+    private boolean scanning;
+    /**
+     * Bumped when the index is invalidated, so a scan that started before is thrown away.
+     */
+    private long generation;
+    /**
+     * Completions that arrive while a scan runs, applied once the scan is done.
+     */
+    private List<Completion> completedDuringScan;
+
+    Qa3TestIndex() {
+    }
+
+    public static Qa3TestIndex get() {
+        return instance;
+    }
+
+    /**
+     * Uses jobs whose name matches the regular expression. An empty or invalid pattern restores the default.
+     */
+    public void configure(String regex) {
+        Pattern compiled = Pattern.compile(DEFAULT_PATTERN);
+        if (regex != null && regex.trim().length() > 0) {
+            try {
+                compiled = Pattern.compile(regex.trim());
+            } catch (PatternSyntaxException e) {
+                logger.warning("Invalid QA3 test job pattern, using the default: " + e.getMessage());
+            }
+        }
+        synchronized (this) {
+            if (!compiled.pattern().equals(pattern.pattern())) {
+                pattern = compiled;
+                invalidate();
+            }
+        }
+    }
+
+    public String getPattern() {
+        return pattern.pattern();
+    }
+
+    /**
+     * @return names of the QA3 test jobs whose last completed build failed, sorted
+     */
+    public List<String> getBrokenJobs() {
+        ensureLoaded();
+        synchronized (this) {
+            return state != null ? new ArrayList<String>(state.broken) : new ArrayList<String>();
+        }
+    }
+
+    boolean matches(String jobName) {
+        return pattern.matcher(jobName).matches();
+    }
+
+    synchronized void invalidate() {
+        state = null;
+        generation++;
+    }
+
+    private void ensureLoaded() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        long scanGeneration;
+        synchronized (this) {
+            while (scanning) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (state != null) {
+                return;
+            }
+            scanning = true;
+            scanGeneration = generation;
+            completedDuringScan = new ArrayList<Completion>();
+        }
+        State scanned = new State();
+        boolean done = false;
+        try {
+            for (Project<?, ?> project : jenkins.getProjects()) {
+                if (matches(project.getName())) {
+                    AbstractBuild<?, ?> lastBuild = project.getLastCompletedBuild();
+                    if (lastBuild != null) {
+                        scanned.update(project.getName(), lastBuild.getNumber(), lastBuild.getResult());
+                    }
+                }
+            }
+            done = true;
+        } finally {
+            synchronized (this) {
+                if (done && generation == scanGeneration) {
+                    for (Completion completion : completedDuringScan) {
+                        scanned.update(completion.jobName, completion.buildNumber, completion.result);
+                    }
+                    state = scanned;
+                }
+                completedDuringScan = null;
+                scanning = false;
+                notifyAll();
+            }
+        }
+    }
+
+    synchronized void onCompleted(String jobName, int buildNumber, Result result) {
+        if (!matches(jobName)) {
+            return;
+        }
+        if (state != null) {
+            state.update(jobName, buildNumber, result);
+        } else if (completedDuringScan != null) {
+            completedDuringScan.add(new Completion(jobName, buildNumber, result));
+        }
+    }
+
+    synchronized void onRenamed(String oldName, String newName) {
+        if (state == null) {
+            // a scan in progress may have seen either name
+            generation++;
+            return;
+        }
+        Integer last = state.lastBuilds.remove(oldName);
+        boolean wasBroken = state.broken.remove(oldName);
+        if (last != null && matches(newName)) {
+            state.lastBuilds.put(newName, last);
+            if (wasBroken) {
+                state.broken.add(newName);
+            }
+        } else if (last == null && matches(newName)) {
+            // renamed into the pattern, its builds were never looked at
+            invalidate();
+        }
+    }
+
+    synchronized void onDeleted(String jobName) {
+        if (state == null) {
+            generation++;
+            return;
+        }
+        state.lastBuilds.remove(jobName);
+        state.broken.remove(jobName);
+    }
+
+    /**
+     * Starts from an empty index instead of scanning, for tests that have no Jenkins.
+     */
+    synchronized void markLoaded() {
+        state = new State();
+    }
+
+    /**
+     * The last completed build of every QA3 test job known to the index, and which of them failed.
+     */
+    private static final class State {
+        private final Map<String, Integer> lastBuilds = new HashMap<String, Integer>();
+        private final Set<String> broken = new TreeSet<String>();
+
+        void update(String jobName, int buildNumber, Result result) {
+            Integer last = lastBuilds.get(jobName);
+            if (last != null && last > buildNumber) {
+                // an older build that completed late does not tell the job's current state
+                return;
+            }
+            lastBuilds.put(jobName, buildNumber);
+            if (result == Result.FAILURE) {
+                broken.add(jobName);
+            } else {
+                broken.remove(jobName);
+            }
+        }
+    }
+
+    private static final class Completion {
+        private final String jobName;
+        private final int buildNumber;
+        private final Result result;
+
+        Completion(String jobName, int buildNumber, Result result) {
+            this.jobName = jobName;
+            this.buildNumber = buildNumber;
+            this.result = result;
+        }
+    }
+
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class RunListenerImpl extends RunListener<Run> {
+
+        public RunListenerImpl() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onCompleted(Run r, TaskListener listener) {
+            Job job = r.getParent();
+            if (job instanceof Project) {
+                get().onCompleted(job.getName(), r.getNumber(), r.getResult());
+            }
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            if (item instanceof Project) {
+                get().onRenamed(oldName, newName);
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof Project) {
+                get().onDeleted(item.getName());
+            }
+        }
+
+        @Override
+        public void onLoaded() {
+            get().invalidate();
+        }
+    }
+}
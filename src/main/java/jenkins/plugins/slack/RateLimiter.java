@@ -0,0 +1,162 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket that keeps posts to one incoming webhook under Slack's rate limit.
+ *
+ * Slack accepts roughly one message per second per webhook with short bursts. Instead of firing a burst into a
+ * 429, callers {@link #reserve()} a permit and delay their post by the returned amount; reservations may run the
+ * bucket into debt, which queues later posts behind earlier ones at the configured rate.
+ */
+public class RateLimiter {
+
+    static final double DEFAULT_RATE = 1.0;
+    static final int DEFAULT_BURST = 3;
+
+    private static final ConcurrentMap<Webhook, RateLimiter> limiters = new ConcurrentHashMap<Webhook, RateLimiter>();
+
+    private static volatile double defaultRate = DEFAULT_RATE;
+    private static volatile int defaultBurst = DEFAULT_BURST;
+
+    private final String name;
+    private double permitsPerSecond;
+    private int burst;
+    private double tokens;
+    private long lastRefill;
+
+    private final AtomicLong permits = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong rejectedBySlack = new AtomicLong();
+
+    RateLimiter(String name, double permitsPerSecond, int burst, long now) {
+        this.name = name;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = now;
+    }
+
+    /**
+     * @return the limiter shared by every post to the webhook identified by team domain and token
+     */
+    public static RateLimiter forWebhook(String teamDomain, String token) {
+        Webhook key = new Webhook(teamDomain, token);
+        RateLimiter limiter = limiters.get(key);
+        if (limiter == null) {
+            RateLimiter created = new RateLimiter(key.toString(), defaultRate, defaultBurst, System.nanoTime());
+            limiter = limiters.putIfAbsent(key, created);
+            if (limiter == null) {
+                limiter = created;
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Applies new limits to all current and future webhooks. Non-positive values restore the defaults.
+     */
+    public static void configure(double permitsPerSecond, int burst) {
+        defaultRate = permitsPerSecond > 0 ? permitsPerSecond : DEFAULT_RATE;
+        defaultBurst = burst > 0 ? burst : DEFAULT_BURST;
+        for (RateLimiter limiter : limiters.values()) {
+            limiter.setRate(defaultRate, defaultBurst);
+        }
+    }
+
+    public static List<RateLimiter> all() {
+        return new ArrayList<RateLimiter>(limiters.values());
+    }
+
+    synchronized void setRate(double permitsPerSecond, int burst) {
+        refill(System.nanoTime());
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+    }
+
+    /**
+     * Takes one permit.
+     *
+     * @return how long, in nanoseconds, the caller has to wait before using it
+     */
+    public long reserve() {
+        return reserve(System.nanoTime());
+    }
+
+    long reserve(long now) {
+        long wait;
+        synchronized (this) {
+            refill(now);
+            tokens -= 1;
+            wait = tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+        permits.incrementAndGet();
+        if (wait > 0) {
+            delayed.incrementAndGet();
+            totalWaitNanos.addAndGet(wait);
+            long max = maxWaitNanos.get();
+            while (wait > max && !maxWaitNanos.compareAndSet(max, wait)) {
+                max = maxWaitNanos.get();
+            }
+        }
+        return wait;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(burst, tokens + elapsed * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * Records a 429 returned by Slack despite the limiter.
+     */
+    public void onRejectedBySlack() {
+        rejectedBySlack.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public synchronized int getBurst() {
+        return burst;
+    }
+
+    public long getPermitCount() {
+        return permits.get();
+    }
+
+    /**
+     * @return how many posts had to wait for a permit
+     */
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public long getRejectedBySlackCount() {
+        return rejectedBySlack.get();
+    }
+}
@@ -0,0 +1,427 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.model.listeners.ItemListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the current run of equal results of every notifying project, so that "Back to normal", "Still Failing"
+ * and who started a failure streak are known without walking (and loading) the build history.
+ *
+ * The streak is updated in memory as builds complete, and kept in a one-line file in the job directory. Aborted
+ * builds do not take part, and a build that completes after a newer one does not change the streak. A project
+ * without the file gets its streak from its history once. Reading the file or the history and saving the file is
+ * left to {@link #load}, which runs on the notification dispatcher, so a completing build never waits for the disk.
+ */
+public final class ResultStreakTracker {
+
+    private static final Logger logger = Logger.getLogger(ResultStreakTracker.class.getName());
+
+    static final String FILE_NAME = "slack-result-streak";
+    /**
+     * How far back the history is searched for the start of the streak when there is no file yet.
+     */
+    static final int BOOTSTRAP_BUILDS = 50;
+
+    private static final ResultStreakTracker instance = new ResultStreakTracker();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    ResultStreakTracker() {
+    }
+
+    public static ResultStreakTracker get() {
+        return instance;
+    }
+
+    /**
+     * Takes the completed build into account, in memory only.
+     *
+     * @return the project's streak including the build, or null while the project's streak has not been loaded
+     */
+    public Streak record(AbstractBuild<?, ?> build) {
+        return record(build.getProject().getFullName(), build.getNumber(), build.getResult(), BuildContext.findUserId(build));
+    }
+
+    Streak record(String key, int buildNumber, Result result, String userId) {
+        Entry entry = entry(key);
+        synchronized (entry) {
+            if (entry.streak == null) {
+                entry.pending.add(new Completion(buildNumber, result, userId));
+                return null;
+            }
+            return entry.next(buildNumber, result, userId);
+        }
+    }
+
+    /**
+     * Loads the project's streak from its file or its history if it is not known yet, and saves it if it changed.
+     *
+     * @return the project's streak including the build
+     */
+    public Streak load(AbstractBuild<?, ?> build) {
+        AbstractProject<?, ?> project = build.getProject();
+        return load(project.getFullName(), new File(project.getRootDir(), FILE_NAME), build.getNumber(), build);
+    }
+
+    /**
+     * @param history the build whose history gives the streak when there is no file, or null for none
+     */
+    Streak load(String key, File file, int buildNumber, AbstractBuild<?, ?> history) {
+        Entry entry = entry(key);
+        // only one load or save per project at a time, records do not wait for it
+        synchronized (entry.io) {
+            Streak including = null;
+            boolean loaded;
+            synchronized (entry) {
+                loaded = entry.streak != null;
+            }
+            if (!loaded) {
+                Streak streak = read(file);
+                if (streak == null) {
+                    streak = history != null ? fromHistory(history) : Streak.NONE;
+                }
+                synchronized (entry) {
+                    entry.streak = streak;
+                    entry.dirty = false;
+                    for (Completion completion : entry.pending) {
+                        Streak next = entry.next(completion.buildNumber, completion.result, completion.userId);
+                        if (completion.buildNumber == buildNumber) {
+                            including = next;
+                        }
+                    }
+                    entry.pending.clear();
+                }
+            }
+            Streak changed = null;
+            synchronized (entry) {
+                if (entry.dirty) {
+                    changed = entry.streak;
+                    entry.dirty = false;
+                }
+                if (including == null) {
+                    including = entry.streak;
+                }
+            }
+            if (changed != null) {
+                write(file, changed);
+            }
+            return including;
+        }
+    }
+
+    private Entry entry(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Entry created = new Entry();
+            entry = entries.putIfAbsent(key, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    void forget(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Replays the builds before this one, back to where the streak started.
+     */
+    private static Streak fromHistory(AbstractBuild<?, ?> build) {
+        LinkedList<AbstractBuild<?, ?>> builds = new LinkedList<AbstractBuild<?, ?>>();
+        Result streakResult = null;
+        boolean streakEnded = false;
+        AbstractBuild<?, ?> previous = build.getPreviousCompletedBuild();
+        for (int i = 0; previous != null && i < BOOTSTRAP_BUILDS && !streakEnded; i++) {
+            Result result = previous.getResult();
+            if (result != null && result != Result.ABORTED) {
+                if (streakResult == null) {
+                    streakResult = result;
+                } else if (result != streakResult) {
+                    // the build before the streak, needed for its previous result
+                    streakEnded = true;
+                }
+            }
+            builds.addFirst(previous);
+            previous = previous.getPreviousCompletedBuild();
+        }
+        Streak streak = Streak.NONE;
+        for (AbstractBuild<?, ?> past : builds) {
+            streak = streak.next(past.getNumber(), past.getResult(), BuildContext.findUserId(past));
+        }
+        return streak;
+    }
+
+    static Streak read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                return Streak.parse(reader.readLine());
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Unable to read " + file + ", rebuilding it from the build history", e);
+            return null;
+        }
+    }
+
+    private static void write(File file, Streak streak) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            try {
+                writer.write(streak.format());
+                writer.write('\n');
+            } finally {
+                writer.close();
+            }
+            if (!tmp.renameTo(file)) {
+                // Windows does not rename over an existing file
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tmp + " to " + file);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to save " + file, e);
+        }
+    }
+
+    /**
+     * A project's streak, guarded by the entry itself. Loading and saving are guarded by {@link #io}.
+     */
+    private static final class Entry {
+        private final Object io = new Object();
+        /**
+         * Null until loaded, completions before that wait in {@link #pending}.
+         */
+        private Streak streak;
+        private final List<Completion> pending = new ArrayList<Completion>();
+        private boolean dirty;
+
+        Streak next(int buildNumber, Result result, String userId) {
+            Streak next = streak.next(buildNumber, result, userId);
+            if (next != streak) {
+                streak = next;
+                dirty = true;
+            }
+            return next;
+        }
+    }
+
+    private static final class Completion {
+        private final int buildNumber;
+        private final Result result;
+        private final String userId;
+
+        Completion(int buildNumber, Result result, String userId) {
+            this.buildNumber = buildNumber;
+            this.result = result;
+            this.userId = userId;
+        }
+    }
+
+    /**
+     * The last non-aborted result of a project, how long it has lasted and how it started.
+     */
+    public static final class Streak {
+
+        static final Streak NONE = new Streak(0, null, null, 0, 0, null);
+
+        /**
+         * How many of the latest builds {@link #getResultBefore} knows the result of, for builds that complete late.
+         */
+        static final int RECENT_BUILDS = 16;
+
+        private final int lastBuild;
+        private final Result result;
+        private final Result previousResult;
+        private final int length;
+        private final int firstBuild;
+        private final String firstUserId;
+        /**
+         * Numbers and results of the latest builds taken into account, late ones included, in ascending order. Not
+         * kept in the file.
+         */
+        private final int[] recentBuilds;
+        private final Result[] recentResults;
+
+        Streak(int lastBuild, Result result, Result previousResult, int length, int firstBuild, String firstUserId) {
+            this(lastBuild, result, previousResult, length, firstBuild, firstUserId, new int[0], new Result[0]);
+        }
+
+        private Streak(int lastBuild, Result result, Result previousResult, int length, int firstBuild, String firstUserId,
+                       int[] recentBuilds, Result[] recentResults) {
+            this.lastBuild = lastBuild;
+            this.result = result;
+            this.previousResult = previousResult;
+            this.length = length;
+            this.firstBuild = firstBuild;
+            this.firstUserId = firstUserId;
+            this.recentBuilds = recentBuilds;
+            this.recentResults = recentResults;
+        }
+
+        /**
+         * A build that completes after a newer one does not change the streak, it is only remembered for
+         * {@link #getResultBefore}.
+         */
+        Streak next(int buildNumber, Result buildResult, String userId) {
+            if (buildResult == null || buildResult == Result.ABORTED || buildNumber == lastBuild
+                    || Arrays.binarySearch(recentBuilds, buildNumber) >= 0) {
+                return this;
+            }
+            int insert = -Arrays.binarySearch(recentBuilds, buildNumber) - 1;
+            if (insert == 0 && recentBuilds.length == RECENT_BUILDS) {
+                // older than everything remembered
+                return this;
+            }
+            int drop = recentBuilds.length == RECENT_BUILDS ? 1 : 0;
+            int[] builds = new int[recentBuilds.length + 1 - drop];
+            Result[] results = new Result[builds.length];
+            System.arraycopy(recentBuilds, drop, builds, 0, insert - drop);
+            System.arraycopy(recentResults, drop, results, 0, insert - drop);
+            builds[insert - drop] = buildNumber;
+            results[insert - drop] = buildResult;
+            System.arraycopy(recentBuilds, insert, builds, insert - drop + 1, recentBuilds.length - insert);
+            System.arraycopy(recentResults, insert, results, insert - drop + 1, recentBuilds.length - insert);
+            if (buildNumber < lastBuild) {
+                return new Streak(lastBuild, result, previousResult, length, firstBuild, firstUserId, builds, results);
+            }
+            if (buildResult == result) {
+                return new Streak(buildNumber, result, result, length + 1, firstBuild, firstUserId, builds, results);
+            }
+            return new Streak(buildNumber, buildResult, result, 1, buildNumber, userId, builds, results);
+        }
+
+        /**
+         * @return the last non-aborted result before the given build, or null if there was none or, for a build
+         * older than the last one, if it is not known
+         */
+        public Result getResultBefore(int buildNumber) {
+            if (buildNumber >= lastBuild) {
+                return buildNumber == lastBuild ? previousResult : result;
+            }
+            int index = Arrays.binarySearch(recentBuilds, buildNumber);
+            int before = (index >= 0 ? index : -index - 1) - 1;
+            if (before >= 0) {
+                return recentResults[before];
+            }
+            return null;
+        }
+
+        /**
+         * Like {@link #getResultBefore(int)}, but looks at the build history for a build that completed late and is
+         * older than the builds the streak remembers.
+         */
+        public Result getResultBefore(AbstractBuild<?, ?> build) {
+            int buildNumber = build.getNumber();
+            Result before = getResultBefore(buildNumber);
+            if (before != null || buildNumber >= lastBuild
+                    || (recentBuilds.length > 0 && recentBuilds[0] < buildNumber)) {
+                return before;
+            }
+            AbstractBuild<?, ?> previous = build.getPreviousBuild();
+            for (int i = 0; previous != null && i < BOOTSTRAP_BUILDS; i++) {
+                Result result = previous.getResult();
+                if (!previous.isBuilding() && result != null && result != Result.ABORTED) {
+                    return result;
+                }
+                previous = previous.getPreviousBuild();
+            }
+            return null;
+        }
+
+        /**
+         * @return the number of the last build taken into account, 0 if none
+         */
+        public int getLastBuild() {
+            return lastBuild;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        /**
+         * @return how many builds in a row had {@link #getResult()}, ignoring aborted builds
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return the number of the build that started the streak
+         */
+        public int getFirstBuild() {
+            return firstBuild;
+        }
+
+        /**
+         * @return the user who started the build that started the streak, if it was started by a user
+         */
+        public String getFirstUserId() {
+            return firstUserId;
+        }
+
+        String format() {
+            return lastBuild + " " + result + " " + previousResult + " " + length + " " + firstBuild
+                    + (firstUserId != null ? " " + firstUserId : "");
+        }
+
+        static Streak parse(String line) {
+            String[] fields = line.trim().split(" ", 6);
+            return new Streak(Integer.parseInt(fields[0]), parseResult(fields[1]), parseResult(fields[2]),
+                    Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), fields.length > 5 ? fields[5] : null);
+        }
+
+        private static Result parseResult(String value) {
+            return "null".equals(value) ? null : Result.fromString(value);
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().forget(oldFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().forget(item.getFullName());
+        }
+    }
+}
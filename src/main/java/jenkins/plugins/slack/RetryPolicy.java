@@ -0,0 +1,74 @@
+package jenkins.plugins.slack;
+
+import jenkins.plugins.slack.PublishResult.ChannelResult;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed post is tried again, and when.
+ *
+ * A 429 (over the webhook's rate limit), a 5xx or no response at all are temporary and retried; any other status
+ * means Slack will never accept the post and it is given up right away. The delay grows exponentially with full
+ * jitter, so posts that failed together do not retry together, and is never shorter than Slack's Retry-After.
+ */
+public class RetryPolicy {
+
+    static final int DEFAULT_MAX_ATTEMPTS = Integer.getInteger(RetryPolicy.class.getName() + ".maxAttempts", 5);
+    static final long DEFAULT_BASE_DELAY_MILLIS = Long.getLong(RetryPolicy.class.getName() + ".baseDelay", 1000L);
+    static final long DEFAULT_MAX_DELAY_MILLIS = Long.getLong(RetryPolicy.class.getName() + ".maxDelay", TimeUnit.MINUTES.toMillis(1));
+
+    private static volatile RetryPolicy instance =
+            new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, new Random());
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    public static RetryPolicy get() {
+        return instance;
+    }
+
+    static void set(RetryPolicy policy) {
+        instance = policy;
+    }
+
+    public static boolean isRetryable(ChannelResult result) {
+        int status = result.getStatusCode();
+        return status == ChannelResult.NO_RESPONSE || status == 429 || status >= 500;
+    }
+
+    /**
+     * @param attempts how many attempts were made so far, including the one that produced the result
+     */
+    public boolean shouldRetry(ChannelResult result, int attempts) {
+        return !result.isSuccess() && attempts < maxAttempts && isRetryable(result);
+    }
+
+    /**
+     * @param attempts how many attempts were made so far
+     * @param retryAfterMillis what Slack asked for, or 0
+     * @return how long to wait before the next attempt
+     */
+    public long getDelayMillis(int attempts, long retryAfterMillis) {
+        long ceiling = maxDelayMillis;
+        int shift = attempts - 1;
+        if (shift < 62 && baseDelayMillis <= maxDelayMillis >> shift) {
+            ceiling = baseDelayMillis << shift;
+        }
+        long jitter = (long) (random.nextDouble() * ceiling);
+        return Math.max(jitter, retryAfterMillis);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,55 @@
+package jenkins.plugins.slack;
+
+import jenkins.model.JenkinsLocationConfiguration;
+
+/**
+ * The global Slack settings as saved by {@link SlackNotifier.DescriptorImpl#configure}.
+ *
+ * A new instance replaces the old one on every save, so a build reads all settings from the same save without
+ * locking, and nothing is copied into the notifiers.
+ */
+final class SlackGlobalConfig {
+
+    static final SlackGlobalConfig EMPTY = new SlackGlobalConfig(null, null, null, null, null);
+
+    private final String teamDomain;
+    private final String token;
+    private final String room;
+    private final String buildServerUrl;
+    private final String sendAs;
+
+    SlackGlobalConfig(String teamDomain, String token, String room, String buildServerUrl, String sendAs) {
+        this.teamDomain = teamDomain;
+        this.token = token;
+        this.room = room;
+        this.buildServerUrl = buildServerUrl == null || buildServerUrl.length() == 0 ? null : buildServerUrl;
+        this.sendAs = sendAs;
+    }
+
+    String getTeamDomain() {
+        return teamDomain;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    String getRoom() {
+        return room;
+    }
+
+    /**
+     * @return the configured URL, or Jenkins' own URL if none was configured
+     */
+    String getBuildServerUrl() {
+        if (buildServerUrl != null) {
+            return buildServerUrl;
+        }
+        JenkinsLocationConfiguration location = JenkinsLocationConfiguration.get();
+        return location != null ? location.getUrl() : null;
+    }
+
+    String getSendAs() {
+        return sendAs;
+    }
+}
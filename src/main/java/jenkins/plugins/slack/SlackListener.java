@@ -3,13 +3,11 @@ package jenkins.plugins.slack;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.Descriptor;
 import hudson.model.TaskListener;
 import hudson.model.BuildListener;
 import hudson.model.listeners.RunListener;
-import hudson.tasks.Publisher;
 
-import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @Extension
@@ -24,7 +22,12 @@ public class SlackListener extends RunListener<AbstractBuild> {
 
     @Override
     public void onCompleted(AbstractBuild r, TaskListener listener) {
-        getNotifier(r.getProject(), listener).completed(r);
+        try {
+            getNotifier(r.getProject(), listener).completed(r);
+        } catch (RuntimeException e) {
+            // never let a Slack problem disturb the build that is completing
+            logger.log(Level.WARNING, "Unable to queue Slack notification for " + r.getFullDisplayName(), e);
+        }
         super.onCompleted(r, listener);
     }
 
@@ -46,14 +49,10 @@ public class SlackListener extends RunListener<AbstractBuild> {
         // super.onFinalized(r);
     }
 
-    @SuppressWarnings("unchecked")
     FineGrainedNotifier getNotifier(AbstractProject project, TaskListener listener) {
-        Map<Descriptor<Publisher>, Publisher> map = project.getPublishersList().toMap();
-        for (Publisher publisher : map.values()) {
-            if (publisher instanceof SlackNotifier) {
-                ((SlackNotifier)publisher).update();
-                return new ActiveNotifier((SlackNotifier) publisher, (BuildListener)listener);
-            }
+        SlackNotifier notifier = SlackNotifierIndex.get(project);
+        if (notifier != null) {
+            return new ActiveNotifier(notifier, (BuildListener)listener);
         }
         return new DisabledNotifier();
     }
@@ -0,0 +1,28 @@
+package jenkins.plugins.slack;
+
+/**
+ * One rendered notification, posted to Slack as an attachment with the given colour.
+ */
+public class SlackMessage {
+
+    private final String text;
+    private final String color;
+
+    public SlackMessage(String text, String color) {
+        this.text = text;
+        this.color = color;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    @Override
+    public String toString() {
+        return text + " " + color;
+    }
+}
@@ -0,0 +1,236 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latencies of the notification pipeline, shown by {@link SlackMetricsLink}.
+ *
+ * Queue wait is the time a notification spends in the {@link NotificationDispatcher} queue and render time the
+ * time spent building its messages; both happen before the notification is resolved to a team and channels, so
+ * they are kept for the plugin as a whole. Posts are counted and timed per team and channel.
+ */
+public final class SlackMetrics {
+
+    /**
+     * Channels beyond this many are counted together, so a job posting to ever new channels can't grow this forever.
+     */
+    static final int MAX_DESTINATIONS = Integer.getInteger(SlackMetrics.class.getName() + ".maxDestinations", 1000);
+
+    static final String OTHER = "(other)";
+
+    private static final SlackMetrics instance = new SlackMetrics();
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram render = new LatencyHistogram();
+    private final ConcurrentMap<List<String>, Destination> destinations = new ConcurrentHashMap<List<String>, Destination>();
+
+    SlackMetrics() {
+    }
+
+    public static SlackMetrics get() {
+        return instance;
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    public void recordRender(long nanos) {
+        render.record(nanos);
+    }
+
+    /**
+     * @return the counters of posts to the channel of the team
+     */
+    public Destination forDestination(String teamDomain, String channel) {
+        List<String> key = Arrays.asList(String.valueOf(teamDomain), String.valueOf(channel));
+        Destination destination = destinations.get(key);
+        if (destination == null) {
+            if (destinations.size() >= MAX_DESTINATIONS) {
+                key = Arrays.asList(OTHER, OTHER);
+            }
+            Destination created = new Destination(key.get(0), key.get(1));
+            destination = destinations.putIfAbsent(key, created);
+            if (destination == null) {
+                destination = created;
+            }
+        }
+        return destination;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getRender() {
+        return render;
+    }
+
+    /**
+     * @return the destinations sorted by team and channel
+     */
+    public List<Destination> getDestinations() {
+        List<Destination> sorted = new ArrayList<Destination>(destinations.values());
+        Collections.sort(sorted, new Comparator<Destination>() {
+            public int compare(Destination a, Destination b) {
+                int team = a.teamDomain.compareTo(b.teamDomain);
+                return team != 0 ? team : a.channel.compareTo(b.channel);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @return the counters of all destinations added up
+     */
+    public Destination getTotal() {
+        Destination total = new Destination("", "");
+        for (Destination destination : destinations.values()) {
+            total.enqueued.addAndGet(destination.getEnqueuedCount());
+            total.sent.addAndGet(destination.getSentCount());
+            total.failed.addAndGet(destination.getFailedCount());
+            total.rejected.addAndGet(destination.getRejectedCount());
+            total.retried.addAndGet(destination.getRetriedCount());
+        }
+        return total;
+    }
+
+    public NotificationDispatcher getDispatcher() {
+        return NotificationDispatcher.get();
+    }
+
+    void clear() {
+        destinations.clear();
+    }
+
+    public JSONObject toJson() {
+        NotificationDispatcher dispatcher = getDispatcher();
+        JSONObject executor = new JSONObject();
+        executor.put("queueSize", dispatcher.getQueueSize());
+        executor.put("activeThreads", dispatcher.getActiveCount());
+        executor.put("threads", dispatcher.getThreadCount());
+        executor.put("queued", dispatcher.getQueuedCount());
+        executor.put("dropped", dispatcher.getDroppedCount());
+        executor.put("failed", dispatcher.getFailedCount());
+
+        JSONArray channels = new JSONArray();
+        for (Destination destination : getDestinations()) {
+            channels.put(destination.toJson());
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("executor", executor);
+        json.put("queueWait", queueWait.toJson());
+        json.put("render", render.toJson());
+        json.put("total", getTotal().countsToJson());
+        json.put("destinations", channels);
+        return json;
+    }
+
+    /**
+     * Posts to one channel of a team. A post that is retried counts once as enqueued and once as sent, failed or
+     * rejected, every attempt is timed.
+     */
+    public static final class Destination {
+        private final String teamDomain;
+        private final String channel;
+        private final AtomicLong enqueued = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong retried = new AtomicLong();
+        private final LatencyHistogram http = new LatencyHistogram();
+
+        Destination(String teamDomain, String channel) {
+            this.teamDomain = teamDomain;
+            this.channel = channel;
+        }
+
+        void enqueued() {
+            enqueued.incrementAndGet();
+        }
+
+        void sent() {
+            sent.incrementAndGet();
+        }
+
+        void failed() {
+            failed.incrementAndGet();
+        }
+
+        /**
+         * A post that was not attempted because the webhook's {@link CircuitBreaker} was open.
+         */
+        void rejected() {
+            rejected.incrementAndGet();
+        }
+
+        void retried() {
+            retried.incrementAndGet();
+        }
+
+        void recordHttp(long nanos) {
+            http.record(nanos);
+        }
+
+        public String getTeamDomain() {
+            return teamDomain;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public long getEnqueuedCount() {
+            return enqueued.get();
+        }
+
+        public long getSentCount() {
+            return sent.get();
+        }
+
+        public long getFailedCount() {
+            return failed.get();
+        }
+
+        public long getRejectedCount() {
+            return rejected.get();
+        }
+
+        public long getRetriedCount() {
+            return retried.get();
+        }
+
+        public LatencyHistogram getHttp() {
+            return http;
+        }
+
+        JSONObject countsToJson() {
+            JSONObject json = new JSONObject();
+            json.put("enqueued", getEnqueuedCount());
+            json.put("sent", getSentCount());
+            json.put("failed", getFailedCount());
+            json.put("rejected", getRejectedCount());
+            json.put("retried", getRetriedCount());
+            return json;
+        }
+
+        JSONObject toJson() {
+            JSONObject json = countsToJson();
+            json.put("teamDomain", teamDomain);
+            json.put("channel", channel);
+            json.put("http", http.toJson());
+            return json;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * "Slack Notification Metrics" page under Manage Jenkins, showing {@link SlackMetrics}.
+ *
+ * The same numbers are served as JSON at {@code manage/slack-metrics/json} for monitoring.
+ */
+@Extension
+public class SlackMetricsLink extends ManagementLink {
+
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    public String getDisplayName() {
+        return "Slack Notification Metrics";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Queue, latency and delivery statistics of Slack notifications.";
+    }
+
+    public String getUrlName() {
+        return "slack-metrics";
+    }
+
+    public SlackMetrics getMetrics() {
+        return SlackMetrics.get();
+    }
+
+    public void doJson(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = rsp.getWriter();
+        writer.print(getMetrics().toJson().toString());
+        writer.flush();
+    }
+}
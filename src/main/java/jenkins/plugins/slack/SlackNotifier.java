@@ -2,11 +2,11 @@ package jenkins.plugins.slack;
 
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.BuildListener;
 import hudson.model.JobPropertyDescriptor;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.Descriptor;
 import hudson.model.Job;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
@@ -15,7 +15,7 @@ import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
 
@@ -25,6 +25,7 @@ import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
+import jenkins.model.Jenkins;
 import jenkins.model.JenkinsLocationConfiguration;
 
 public class SlackNotifier extends Notifier {
@@ -42,19 +43,33 @@ public class SlackNotifier extends Notifier {
         return (DescriptorImpl) super.getDescriptor();
     }
 
+    /**
+     * @return the global settings, which take precedence over the ones saved with the job, or null outside Jenkins
+     */
+    private SlackGlobalConfig globalConfig() {
+        return Jenkins.getInstance() != null ? getDescriptor().getConfig() : null;
+    }
+
     public String getTeamDomain() {
-        return teamDomain;
+        SlackGlobalConfig global = globalConfig();
+        return global != null ? global.getTeamDomain() : teamDomain;
     }
 
     public String getRoom() {
-        return room;
+        SlackGlobalConfig global = globalConfig();
+        return global != null ? global.getRoom() : room;
     }
 
     public String getAuthToken() {
-        return authToken;
+        SlackGlobalConfig global = globalConfig();
+        return global != null ? global.getToken() : authToken;
     }
 
     public String getBuildServerUrl() {
+        SlackGlobalConfig global = globalConfig();
+        if (global != null) {
+            return global.getBuildServerUrl();
+        }
         if(buildServerUrl == null || buildServerUrl == "") {
             JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
             return jenkinsConfig.getUrl();
@@ -65,7 +80,8 @@ public class SlackNotifier extends Notifier {
     }
 
     public String getSendAs() {
-        return sendAs;
+        SlackGlobalConfig global = globalConfig();
+        return global != null ? global.getSendAs() : sendAs;
     }
 
     @DataBoundConstructor
@@ -82,6 +98,16 @@ public class SlackNotifier extends Notifier {
         return BuildStepMonitor.BUILD;
     }
 
+    /**
+     * Like {@link #newSlackService}, but reuses the service created earlier for the same settings.
+     */
+    public SlackService getSlackService(String teamDomain, String token, String projectRoom) {
+        return SlackServiceRegistry.get(this,
+                teamDomain != null ? teamDomain : getTeamDomain(),
+                token != null ? token : getAuthToken(),
+                projectRoom != null ? projectRoom : getRoom());
+    }
+
     public SlackService newSlackService(String teamDomain, String token, String projectRoom) {
         // Settings are passed here from the job, if they are null, use global settings
         if (teamDomain == null) {
@@ -94,6 +120,13 @@ public class SlackNotifier extends Notifier {
             projectRoom = getRoom();
         }
 
+        if (CoalescingSlackService.isEnabled()) {
+            return new CoalescingSlackService(teamDomain, token, projectRoom);
+        }
+        Outbox outbox = Outbox.get();
+        if (outbox != null) {
+            return new OutboxSlackService(outbox, teamDomain, token, projectRoom);
+        }
         return new StandardSlackService(teamDomain, token, projectRoom);
     }
 
@@ -102,14 +135,6 @@ public class SlackNotifier extends Notifier {
         return true;
     }
 
-    public void update() {
-        this.teamDomain = getDescriptor().teamDomain;
-        this.authToken = getDescriptor().token;
-        this.buildServerUrl = getDescriptor().buildServerUrl;
-        this.room = getDescriptor().room;
-        this.sendAs = getDescriptor().sendAs;
-    }
-
     @Extension
     public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
@@ -118,35 +143,90 @@ public class SlackNotifier extends Notifier {
         private String room;
         private String buildServerUrl;
         private String sendAs;
+        private double rateLimit;
+        private int rateLimitBurst;
+        private boolean coalesce;
+        private int coalesceWindow;
+        private int coalesceMaxMessages;
+        private String qa3TestJobPattern;
+        private String transport;
+
+        private transient volatile SlackGlobalConfig config = SlackGlobalConfig.EMPTY;
 
         public DescriptorImpl() {
             load();
+            publish();
+            RateLimiter.configure(rateLimit, rateLimitBurst);
+            CoalescingSlackService.configure(coalesce, coalesceWindow, coalesceMaxMessages);
+            Qa3TestIndex.get().configure(qa3TestJobPattern);
+            SlackTransport.configure(transport);
+        }
+
+        /**
+         * Replaces the settings read by builds with the ones in the fields.
+         */
+        private void publish() {
+            config = new SlackGlobalConfig(teamDomain, token, room, buildServerUrl, sendAs);
+        }
+
+        SlackGlobalConfig getConfig() {
+            return config;
         }
 
         public String getTeamDomain() {
-            return teamDomain;
+            return config.getTeamDomain();
         }
 
         public String getToken() {
-            return token;
+            return config.getToken();
         }
 
         public String getRoom() {
-            return room;
+            return config.getRoom();
         }
 
         public String getBuildServerUrl() {
-            if(buildServerUrl == null || buildServerUrl == "") {
-                JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
-                return jenkinsConfig.getUrl();
-            }
-            else {
-                return buildServerUrl;
-            }
+            return config.getBuildServerUrl();
         }
 
         public String getSendAs() {
-            return sendAs;
+            return config.getSendAs();
+        }
+
+        public double getRateLimit() {
+            return rateLimit > 0 ? rateLimit : RateLimiter.DEFAULT_RATE;
+        }
+
+        public int getRateLimitBurst() {
+            return rateLimitBurst > 0 ? rateLimitBurst : RateLimiter.DEFAULT_BURST;
+        }
+
+        public boolean isCoalesce() {
+            return coalesce;
+        }
+
+        public int getCoalesceWindow() {
+            return coalesceWindow > 0 ? coalesceWindow : CoalescingSlackService.DEFAULT_WINDOW_SECONDS;
+        }
+
+        public int getCoalesceMaxMessages() {
+            return coalesceMaxMessages > 0 ? coalesceMaxMessages : CoalescingSlackService.DEFAULT_MAX_MESSAGES;
+        }
+
+        public String getQa3TestJobPattern() {
+            return qa3TestJobPattern != null ? qa3TestJobPattern : Qa3TestIndex.DEFAULT_PATTERN;
+        }
+
+        public String getTransport() {
+            return transport != null ? transport : SlackTransport.DEFAULT;
+        }
+
+        public List<RateLimiter> getRateLimiters() {
+            return RateLimiter.all();
+        }
+
+        public List<CircuitBreaker> getCircuitBreakers() {
+            return CircuitBreaker.all();
         }
 
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
@@ -170,6 +250,7 @@ public class SlackNotifier extends Notifier {
             if (sendAs == null) {
                 sendAs = sr.getParameter("slackSendAs");
             }
+            publish();
             return new SlackNotifier(teamDomain, token, room, buildServerUrl, sendAs);
         }
 
@@ -187,10 +268,38 @@ public class SlackNotifier extends Notifier {
             if (buildServerUrl != null && !buildServerUrl.endsWith("/")) {
                 buildServerUrl = buildServerUrl + "/";
             }
+            rateLimit = parseDouble(sr.getParameter("slackRateLimit"), RateLimiter.DEFAULT_RATE);
+            rateLimitBurst = parseInt(sr.getParameter("slackRateLimitBurst"), RateLimiter.DEFAULT_BURST);
+            RateLimiter.configure(rateLimit, rateLimitBurst);
+            coalesce = sr.getParameter("slackCoalesce") != null;
+            coalesceWindow = parseInt(sr.getParameter("slackCoalesceWindow"), CoalescingSlackService.DEFAULT_WINDOW_SECONDS);
+            coalesceMaxMessages = parseInt(sr.getParameter("slackCoalesceMaxMessages"), CoalescingSlackService.DEFAULT_MAX_MESSAGES);
+            CoalescingSlackService.configure(coalesce, coalesceWindow, coalesceMaxMessages);
+            qa3TestJobPattern = Util.fixEmptyAndTrim(sr.getParameter("slackQa3TestJobPattern"));
+            Qa3TestIndex.get().configure(qa3TestJobPattern);
+            transport = Util.fixEmptyAndTrim(sr.getParameter("slackTransport"));
+            SlackTransport.configure(transport);
+            publish();
             save();
             return super.configure(sr, formData);
         }
 
+        private static double parseDouble(String value, double defaultValue) {
+            try {
+                return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        private static int parseInt(String value, int defaultValue) {
+            try {
+                return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
         SlackService getSlackService(final String teamDomain, final String authToken, final String room) {
             return new StandardSlackService(teamDomain, authToken, room);
         }
@@ -299,13 +408,10 @@ public class SlackNotifier extends Notifier {
         @Override
         public boolean prebuild(AbstractBuild<?, ?> build, BuildListener listener) {
             if (startNotification) {
-                Map<Descriptor<Publisher>, Publisher> map = build.getProject().getPublishersList().toMap();
-                for (Publisher publisher : map.values()) {
-                    if (publisher instanceof SlackNotifier) {
-                        logger.info("Invoking Started...");
-                        ((SlackNotifier) publisher).update();
-                        new ActiveNotifier((SlackNotifier) publisher, listener).started(build);
-                    }
+                SlackNotifier notifier = SlackNotifierIndex.get(build.getProject());
+                if (notifier != null) {
+                    logger.fine("Invoking Started...");
+                    new ActiveNotifier(notifier, listener).started(build);
                 }
             }
             return super.prebuild(build, listener);
@@ -0,0 +1,111 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.tasks.Publisher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@link SlackNotifier} of every project that has been built, so starting and completing builds don't scan the
+ * project's publishers each time.
+ *
+ * A project's entry is found on first use and dropped when the project is saved, renamed, moved or deleted, or
+ * when Jenkins reloads its jobs.
+ */
+final class SlackNotifierIndex {
+
+    /**
+     * Stands for "no Slack notifier", the map can't hold null.
+     */
+    private static final Object NONE = new Object();
+
+    private static final ConcurrentMap<String, Object> notifiers = new ConcurrentHashMap<String, Object>();
+    /**
+     * Counts invalidations, so a lookup that overlapped one does not put back what it invalidated.
+     */
+    private static final AtomicLong invalidations = new AtomicLong();
+
+    private SlackNotifierIndex() {
+    }
+
+    /**
+     * @return the project's Slack notifier, or null if it has none
+     */
+    static SlackNotifier get(AbstractProject<?, ?> project) {
+        String key = project.getFullName();
+        Object notifier = notifiers.get(key);
+        if (notifier == null) {
+            long seen = invalidations.get();
+            notifier = find(project);
+            if (notifiers.putIfAbsent(key, notifier) == null && invalidations.get() != seen) {
+                // invalidated while it was looked up, what was found may be out of date
+                notifiers.remove(key, notifier);
+            }
+        }
+        return notifier != NONE ? (SlackNotifier) notifier : null;
+    }
+
+    private static Object find(AbstractProject<?, ?> project) {
+        for (Publisher publisher : project.getPublishersList()) {
+            if (publisher instanceof SlackNotifier) {
+                return publisher;
+            }
+        }
+        return NONE;
+    }
+
+    static void invalidate(String fullName) {
+        // counted before removing, a lookup that puts its entry after the removal sees the count
+        invalidations.incrementAndGet();
+        notifiers.remove(fullName);
+    }
+
+    static void invalidate() {
+        invalidations.incrementAndGet();
+        notifiers.clear();
+    }
+
+    @Extension
+    public static class ConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof AbstractProject) {
+                invalidate(((AbstractProject<?, ?>) o).getFullName());
+            }
+        }
+    }
+
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+
+        @Override
+        public void onUpdated(Item item) {
+            invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            invalidate(oldFullName);
+            invalidate(newFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLoaded() {
+            invalidate();
+        }
+    }
+}
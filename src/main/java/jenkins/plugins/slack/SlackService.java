@@ -1,7 +1,24 @@
 package jenkins.plugins.slack;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.List;
+
 public interface SlackService {
     boolean publish(String message);
 
     boolean publish(String message, String color);
+
+    /**
+     * Like {@link #publish(String, String)}, but returns without waiting for Slack.
+     */
+    ListenableFuture<PublishResult> publishAsync(String message, String color);
+
+    /**
+     * Posts the messages of one event, without waiting for Slack. They are sent together as one Slack message with
+     * an attachment per message, in order and each with its own colour.
+     *
+     * @return the result of every channel, a channel that failed for any of the messages reports that failure
+     */
+    ListenableFuture<PublishResult> publishAll(List<SlackMessage> messages);
 }
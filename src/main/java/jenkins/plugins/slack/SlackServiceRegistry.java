@@ -0,0 +1,83 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reuses {@link SlackService} instances across notifications, keyed by the resolved team domain, token and
+ * channels, so sending a message does not build and configure a new service each time.
+ *
+ * Holds at most {@link #CAPACITY} services and evicts the least recently used. Everything is dropped when the
+ * global configuration or a job's configuration is saved, as that may change which service a job gets.
+ */
+final class SlackServiceRegistry {
+
+    static final int CAPACITY = Integer.getInteger(SlackServiceRegistry.class.getName() + ".capacity", 256);
+
+    /**
+     * Guarded by itself.
+     */
+    private static final Map<List<String>, SlackService> services = new LinkedHashMap<List<String>, SlackService>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, SlackService> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private SlackServiceRegistry() {
+    }
+
+    /**
+     * @return the service of an earlier call with the same settings, or a new one from the notifier
+     */
+    static SlackService get(SlackNotifier notifier, String teamDomain, String token, String room) {
+        List<String> key = Arrays.asList(teamDomain, token, room);
+        synchronized (services) {
+            SlackService service = services.get(key);
+            if (service != null) {
+                return service;
+            }
+        }
+        SlackService service = notifier.newSlackService(teamDomain, token, room);
+        synchronized (services) {
+            SlackService raced = services.get(key);
+            if (raced != null) {
+                return raced;
+            }
+            services.put(key, service);
+        }
+        return service;
+    }
+
+    static void invalidate() {
+        synchronized (services) {
+            services.clear();
+        }
+    }
+
+    static int size() {
+        synchronized (services) {
+            return services.size();
+        }
+    }
+
+    @Extension
+    public static class ConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SlackNotifier.DescriptorImpl
+                    || (o instanceof AbstractProject && ((AbstractProject<?, ?>) o).getProperty(SlackNotifier.SlackJobProperty.class) != null)) {
+                invalidate();
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.logging.Logger;
+
+/**
+ * Sends the HTTP posts of {@link StandardSlackService}.
+ *
+ * {@link HttpClientTransport} posts on the calling thread, so a fan-out thread is busy for the whole round trip.
+ * {@link AsyncHttpTransport} hands the post to a non-blocking client and returns at once, so a few I/O threads keep
+ * any number of posts in flight. The transport is chosen in the global configuration.
+ */
+abstract class SlackTransport {
+
+    private static final Logger logger = Logger.getLogger(SlackTransport.class.getName());
+
+    static final String DEFAULT = HttpClientTransport.ID;
+
+    private static volatile SlackTransport instance = new HttpClientTransport();
+
+    static SlackTransport get() {
+        return instance;
+    }
+
+    /**
+     * Replaces the transport, e.g. with a fake in tests. The previous one is closed.
+     */
+    static synchronized void set(SlackTransport transport) {
+        SlackTransport previous = instance;
+        instance = transport;
+        if (previous != transport) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Switches to the transport with the id, unknown ids and null select the {@link #DEFAULT}.
+     */
+    static synchronized void configure(String id) {
+        if (AsyncHttpTransport.ID.equals(id)) {
+            if (!(instance instanceof AsyncHttpTransport)) {
+                logger.info("Posting to Slack with the asynchronous HTTP client");
+                set(new AsyncHttpTransport());
+            }
+        } else if (!(instance instanceof HttpClientTransport)) {
+            logger.info("Posting to Slack with the blocking HTTP client");
+            set(new HttpClientTransport());
+        }
+    }
+
+    abstract String getId();
+
+    /**
+     * Posts the payload to the URL.
+     *
+     * @return the response, or the exception if there was no response
+     */
+    abstract ListenableFuture<Response> post(String url, JsonPayload payload);
+
+    /**
+     * Releases the transport's connections and threads. Posts still in flight may fail.
+     */
+    void close() {
+    }
+
+    static final class Response {
+        private final int statusCode;
+        private final String body;
+        private final String retryAfter;
+
+        Response(int statusCode, String body, String retryAfter) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        String getBody() {
+            return body;
+        }
+
+        /**
+         * @return the Retry-After header, or null
+         */
+        String getRetryAfter() {
+            return retryAfter;
+        }
+    }
+}
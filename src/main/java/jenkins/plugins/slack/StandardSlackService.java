@@ -1,28 +1,43 @@
 package jenkins.plugins.slack;
 
-import org.apache.commons.httpclient.HttpClient;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import jenkins.plugins.slack.PublishResult.ChannelResult;
 import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.methods.PostMethod;
-
-import org.json.JSONObject;
-import org.json.JSONArray;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import jenkins.model.Jenkins;
-import hudson.ProxyConfiguration;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
 
 public class StandardSlackService implements SlackService {
 
-    private static final Logger logger = Logger.getLogger(StandardSlackService.class.getName());
+    private static final NotificationLog.Sampled postFailed = new NotificationLog.Sampled("post-failed");
+
+    static final int FAN_OUT_THREADS = Integer.getInteger(StandardSlackService.class.getName() + ".fanOutThreads", 8);
+
+    /**
+     * Posts to every channel but the first, which is posted on the calling thread of {@link #post(List)} unless the
+     * rate limiter says it has to wait. Posts held back by the rate limiter or waiting for a retry wait in this
+     * executor's delay queue.
+     */
+    private static final ScheduledExecutorService fanOutExecutor =
+            Executors.newScheduledThreadPool(FAN_OUT_THREADS, new DaemonThreadFactory("Slack fan-out"));
 
     private String host = "slack.com";
+    private String endpoint;
     private String teamDomain;
     private String token;
     private String[] roomIds;
+    private SlackTransport transport;
+    private RetryPolicy retryPolicy;
 
     public StandardSlackService(String teamDomain, String token, String roomId) {
         super();
@@ -36,74 +51,296 @@ public class StandardSlackService implements SlackService {
     }
 
     public boolean publish(String message, String color) {
+        return post(message, color).isSuccess();
+    }
+
+    public PublishResult post(String message, String color) {
+        return post(Collections.singletonList(new SlackMessage(message, color)));
+    }
+
+    public ListenableFuture<PublishResult> publishAsync(String message, String color) {
+        return postAsync(Collections.singletonList(new SlackMessage(message, color)));
+    }
+
+    /**
+     * Posts the messages as one Slack message with an attachment per message, a single post per channel.
+     */
+    public ListenableFuture<PublishResult> publishAll(List<SlackMessage> messages) {
+        return postAsync(messages);
+    }
+
+    /**
+     * Posts the messages as one Slack message with an attachment per message to all channels concurrently, so a
+     * slow or failing channel does not hold up the others. Every channel takes a permit from the webhook's
+     * {@link RateLimiter} and is delayed rather than sent into a 429. Temporary failures are retried as the
+     * {@link RetryPolicy} says. While the webhook's {@link CircuitBreaker} is open posts fail at once.
+     */
+    public PublishResult post(List<SlackMessage> messages) {
+        try {
+            return postAsync(messages, NotificationLog.currentId(), true).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            PublishResult result = new PublishResult();
+            for (String roomId : roomIds) {
+                result.add(ChannelResult.error(roomId, e));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Like {@link #post(List)}, but returns at once. Retries wait on a timer, not on a thread.
+     */
+    public ListenableFuture<PublishResult> postAsync(List<SlackMessage> messages) {
+        return postAsync(messages, NotificationLog.currentId());
+    }
+
+    /**
+     * @param notificationId logged with the posts, for notifications posted after the thread that made them moved on
+     */
+    public ListenableFuture<PublishResult> postAsync(List<SlackMessage> messages, String notificationId) {
+        return postAsync(messages, notificationId, false);
+    }
+
+    private ListenableFuture<PublishResult> postAsync(List<SlackMessage> messages, String id, boolean postFirstRoomInline) {
+        byte[] attachments = JsonPayload.attachments(messages);
+        RateLimiter limiter = getRateLimiter();
+
+        final List<RoomPost> posts = new ArrayList<RoomPost>(roomIds.length);
+        final SettableFuture<PublishResult> result = SettableFuture.create();
+        final AtomicInteger remaining = new AtomicInteger(roomIds.length);
+        Runnable collect = new Runnable() {
+            public void run() {
+                if (remaining.decrementAndGet() == 0) {
+                    result.set(collect(posts));
+                }
+            }
+        };
         for (String roomId : roomIds) {
-            String url = "https://" + teamDomain + "." + host + "/services/hooks/jenkins-ci?token=" + token;
-            logger.info("Posting: to " + roomId + " on " + teamDomain + " using " + url +": " + message + " " + color);
-            HttpClient client = getHttpClient();
-            PostMethod post = new PostMethod(url);
-            JSONObject json = new JSONObject();
+            RoomPost post = new RoomPost(id, roomId, attachments, messages);
+            post.future.addListener(collect, SAME_THREAD);
+            posts.add(post);
+        }
+        for (int i = 0; i < posts.size(); i++) {
+            long delay = limiter.reserve();
+            if (i == 0 && delay == 0 && postFirstRoomInline) {
+                posts.get(i).run();
+            } else {
+                fanOutExecutor.schedule(posts.get(i), delay, TimeUnit.NANOSECONDS);
+            }
+        }
+        return result;
+    }
 
+    private static PublishResult collect(List<RoomPost> posts) {
+        PublishResult result = new PublishResult();
+        for (RoomPost post : posts) {
             try {
-                JSONObject field = new JSONObject();
-                field.put("short", false);
-                field.put("value", message);
-
-                JSONArray fields = new JSONArray();
-                fields.put(field);
-
-                JSONObject attachment = new JSONObject();
-                attachment.put("fallback", message);
-                attachment.put("color", color);
-                attachment.put("fields", fields);
-                JSONArray attachments = new JSONArray();
-                attachments.put(attachment);
-
-                json.put("channel", roomId);
-                json.put("attachments", attachments);
-
-                post.addParameter("payload", json.toString());
-                post.getParams().setContentCharset("UTF-8");
-                int responseCode = client.executeMethod(post);
-                String response = post.getResponseBodyAsString();
-                if(responseCode != HttpStatus.SC_OK) {
-                    logger.log(Level.WARNING, "Slack post may have failed. Response: " + response);
-                    return false;
-                }
-                return true;
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "Error posting to Slack", e);
-                return false;
-            } finally {
-                logger.info("Posting succeeded");
-                post.releaseConnection();
+                result.add(post.future.get());
+            } catch (ExecutionException e) {
+                result.add(ChannelResult.error(post.roomId, e.getCause()));
+            } catch (InterruptedException e) {
+                // cannot happen, every future is done
+                result.add(ChannelResult.error(post.roomId, e));
             }
         }
-        return false;
-    }
-
-    private HttpClient getHttpClient() {
-        HttpClient client = new HttpClient();
-        if (Jenkins.getInstance() != null) {
-            ProxyConfiguration proxy = Jenkins.getInstance().proxy;
-            if (proxy != null) {
-                client.getHostConfiguration().setProxy(proxy.name, proxy.port);
-                String username = proxy.getUserName();
-                String password = proxy.getPassword();
-                // Consider it to be passed if username specified. Sufficient?
-                if (username != null && !"".equals(username.trim())) {
-                    logger.info("Using proxy authentication (user=" + username + ")");
-                    // http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
-                    // and
-                    // http://svn.apache.org/viewvc/httpcomponents/oac.hc3x/trunk/src/examples/BasicAuthenticationExample.java?view=markup
-                    client.getState().setProxyCredentials(AuthScope.ANY,
-                        new UsernamePasswordCredentials(username, password));
-                }
+        return result;
+    }
+
+    RateLimiter getRateLimiter() {
+        return RateLimiter.forWebhook(teamDomain, token);
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return CircuitBreaker.forWebhook(teamDomain, token);
+    }
+
+    SlackTransport getTransport() {
+        return transport != null ? transport : SlackTransport.get();
+    }
+
+    /**
+     * Starts the post to one channel, the future is done when the transport has the response.
+     */
+    private ListenableFuture<SlackTransport.Response> postToRoom(String id, String roomId, byte[] attachments, List<SlackMessage> messages) {
+        String url = getUrl();
+        if (NotificationLog.isLoggable(Level.FINE)) {
+            NotificationLog.log(Level.FINE, "post", id, "channel", roomId, "team", teamDomain,
+                    "url", NotificationLog.redact(url), "messages", messages.size(), "bytes", attachments.length);
+        }
+        // the attachments are the same for every channel, so they are serialized once per message
+        return getTransport().post(url, new JsonPayload(roomId, attachments));
+    }
+
+    private ChannelResult toResult(String id, String roomId, ListenableFuture<SlackTransport.Response> post, long start) {
+        try {
+            SlackTransport.Response response = post.get();
+            int responseCode = response.getStatusCode();
+            if (responseCode == 429) {
+                getRateLimiter().onRejectedBySlack();
+            }
+            if(responseCode != HttpStatus.SC_OK) {
+                postFailed.log(Level.WARNING, id, null, "channel", roomId, "team", teamDomain,
+                        "status", responseCode, "response", response.getBody());
+            } else if (NotificationLog.isLoggable(Level.FINE)) {
+                NotificationLog.log(Level.FINE, "posted", id, "channel", roomId, "team", teamDomain,
+                        "ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             }
+            return ChannelResult.response(roomId, responseCode, response.getBody(), retryAfterMillis(response.getRetryAfter()));
+        } catch (ExecutionException e) {
+            postFailed.log(Level.WARNING, id, e.getCause(), "channel", roomId, "team", teamDomain);
+            return ChannelResult.error(roomId, e.getCause());
+        } catch (InterruptedException e) {
+            // cannot happen, the future is done
+            Thread.currentThread().interrupt();
+            return ChannelResult.error(roomId, e);
+        }
+    }
+
+    /**
+     * Slack sends Retry-After in seconds.
+     */
+    static long retryAfterMillis(String value) {
+        if (value == null) {
+            return 0;
         }
-        return client;
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    String getUrl() {
+        String base = endpoint != null ? endpoint : "https://" + teamDomain + "." + host + "/services/hooks/jenkins-ci";
+        return base + "?token=" + token;
     }
 
     void setHost(String host) {
         this.host = host;
     }
+
+    /**
+     * Overrides the webhook URL (without the token), e.g. to point at a local stub server.
+     */
+    void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Posts with the transport instead of the configured one.
+     */
+    void setTransport(SlackTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Retries failed posts as the policy says instead of the global {@link RetryPolicy#get()}.
+     */
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy != null ? retryPolicy : RetryPolicy.get();
+    }
+
+    /**
+     * Posts to one channel, and schedules itself again while the {@link RetryPolicy} says so.
+     */
+    private class RoomPost implements Runnable {
+        private final String id;
+        private final String roomId;
+        private final byte[] attachments;
+        private final List<SlackMessage> messages;
+        private final SettableFuture<ChannelResult> future = SettableFuture.create();
+        private final SlackMetrics.Destination metrics;
+        private int attempts;
+
+        RoomPost(String id, String roomId, byte[] attachments, List<SlackMessage> messages) {
+            this.id = id;
+            this.roomId = roomId;
+            this.attachments = attachments;
+            this.messages = messages;
+            this.metrics = SlackMetrics.get().forDestination(teamDomain, roomId);
+            metrics.enqueued();
+        }
+
+        public void run() {
+            attempts++;
+            CircuitBreaker breaker = getCircuitBreaker();
+            if (!breaker.tryAcquire()) {
+                ChannelResult rejected = ChannelResult.error(roomId,
+                        new CircuitBreaker.OpenException(breaker), breaker.getRemainingOpenMillis());
+                rejected.setAttempts(attempts);
+                metrics.rejected();
+                future.set(rejected);
+                return;
+            }
+
+            final long start = System.nanoTime();
+            final ListenableFuture<SlackTransport.Response> post;
+            try {
+                post = postToRoom(id, roomId, attachments, messages);
+            } catch (RuntimeException e) {
+                completed(ChannelResult.error(roomId, e), start);
+                return;
+            }
+            post.addListener(new Runnable() {
+                public void run() {
+                    completed(toResult(id, roomId, post, start), start);
+                }
+            }, SAME_THREAD);
+        }
+
+        /**
+         * Runs on the thread that finished the post, a fan-out thread or one of the transport's I/O threads.
+         */
+        private void completed(ChannelResult result, long start) {
+            CircuitBreaker breaker = getCircuitBreaker();
+            metrics.recordHttp(System.nanoTime() - start);
+            result.setAttempts(attempts);
+            // a 429 means the webhook is alive, just busy
+            if (result.isSuccess() || result.getStatusCode() == 429) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
+
+            RetryPolicy policy = getRetryPolicy();
+            if (policy.shouldRetry(result, attempts)) {
+                long delay = Math.max(TimeUnit.MILLISECONDS.toNanos(policy.getDelayMillis(attempts, result.getRetryAfterMillis())),
+                        getRateLimiter().reserve());
+                if (NotificationLog.isLoggable(Level.FINE)) {
+                    NotificationLog.log(Level.FINE, "retry", id, "channel", roomId, "team", teamDomain,
+                            "attempt", attempts, "delayMs", TimeUnit.NANOSECONDS.toMillis(delay), "result", result);
+                }
+                try {
+                    fanOutExecutor.schedule(this, delay, TimeUnit.NANOSECONDS);
+                    metrics.retried();
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // shutting down, report what we have
+                }
+            }
+            if (!result.isSuccess() && attempts > 1) {
+                NotificationLog.log(Level.WARNING, "gave-up", id, "channel", roomId, "team", teamDomain,
+                        "attempts", attempts, "result", result);
+            }
+            if (result.isSuccess()) {
+                metrics.sent();
+            } else {
+                metrics.failed();
+            }
+            future.set(result);
+        }
+    }
+
+    static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
 }
@@ -0,0 +1,55 @@
+package jenkins.plugins.slack;
+
+/**
+ * Identifies one Slack incoming webhook, i.e. a team domain and integration token pair.
+ */
+final class Webhook {
+
+    private final String teamDomain;
+    private final String token;
+
+    Webhook(String teamDomain, String token) {
+        this.teamDomain = teamDomain;
+        this.token = token;
+    }
+
+    String getTeamDomain() {
+        return teamDomain;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Webhook)) {
+            return false;
+        }
+        Webhook other = (Webhook) o;
+        return equal(teamDomain, other.teamDomain) && equal(token, other.token);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (teamDomain != null ? teamDomain.hashCode() : 0) + (token != null ? token.hashCode() : 0);
+    }
+
+    /**
+     * Only the last characters of the token are shown, this ends up in logs and on the configuration page.
+     */
+    @Override
+    public String toString() {
+        if (token == null || token.length() <= 4) {
+            return String.valueOf(teamDomain);
+        }
+        return teamDomain + " (token ..." + token.substring(token.length() - 4) + ")";
+    }
+}
@@ -0,0 +1,37 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeSetSummaryTest {
+
+    @Test
+    public void smallChangeSetIsListedInFull() {
+        ChangeSetSummary summary = new ChangeSetSummary(50, 10);
+        summary.add("alice", "Fix build", 2);
+        summary.add("bob", "Add test", 1);
+
+        assertEquals(3, summary.getFileCount());
+        assertEquals("- Fix build [alice]\n- Add test [bob]", summary.formatCommits());
+        assertEquals("alice, bob", summary.formatAuthors());
+    }
+
+    @Test
+    public void largeChangeSetIsCapped() {
+        ChangeSetSummary summary = new ChangeSetSummary(3, 2);
+        for (int i = 0; i < 10000; i++) {
+            summary.add("author" + (i % 5 == 0 ? 0 : i % 4), "commit " + i, 30);
+        }
+
+        assertEquals(10000, summary.getEntryCount());
+        assertEquals(300000, summary.getFileCount());
+        assertEquals(Arrays.asList("commit 0 [author0]", "commit 1 [author1]", "commit 2 [author2]"), summary.getCommits());
+        assertTrue(summary.formatCommits().endsWith("- commit 2 [author2]\n...and 9997 more"));
+        assertEquals(Arrays.asList("author0", "author1"), summary.getTopAuthors());
+        assertEquals("author0, author1 and 2 more", summary.formatAuthors());
+    }
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN = TimeUnit.SECONDS.toNanos(30);
+
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 10, 4, 50, TimeUnit.NANOSECONDS.toMillis(OPEN));
+
+    @Test
+    public void opensWhenFailureRateIsReached() {
+        breaker.record(true, 0);
+        breaker.record(false, 0);
+        breaker.record(true, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.record(false, 0);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(1));
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void failuresOutsideWindowAreForgotten() {
+        breaker.record(false, 0);
+        breaker.record(false, 0);
+        for (int i = 0; i < 8; i++) {
+            breaker.record(true, 0);
+        }
+        assertEquals(20, breaker.getFailureRate());
+        breaker.record(true, 0);
+        breaker.record(true, 0);
+
+        assertEquals(0, breaker.getFailureRate());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(false, 0);
+        }
+        assertTrue(breaker.tryAcquire(OPEN));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(OPEN));
+
+        breaker.record(false, OPEN);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(OPEN + 1));
+
+        assertTrue(breaker.tryAcquire(2 * OPEN));
+        breaker.record(true, 2 * OPEN);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(2 * OPEN));
+        assertEquals(2, breaker.getOpenedCount());
+    }
+}
@@ -0,0 +1,126 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingSlackServiceTest {
+
+    private FakeSlackServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSlackServer();
+        RateLimiter.configure(1000, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        CoalescingSlackService.configure(false, 0, 0);
+        server.stop();
+    }
+
+    @Test
+    public void fullBatchIsSentAsOneMessageWithAttachmentPerNotification() throws Exception {
+        CoalescingSlackService.configure(true, 60, 3);
+        CoalescingSlackService service = new CoalescingSlackService("team", "token", "#builds");
+        service.setEndpoint(server.getEndpoint());
+
+        service.publish("first", "good");
+        service.publish("second", "danger");
+        service.publish("third", "warning");
+
+        List<JSONObject> payloads = server.awaitPayloads(1);
+        assertEquals(1, payloads.size());
+        JSONArray attachments = payloads.get(0).getJSONArray("attachments");
+        assertEquals(3, attachments.length());
+        assertEquals("good", attachments.getJSONObject(0).getString("color"));
+        assertEquals("danger", attachments.getJSONObject(1).getString("color"));
+        assertEquals("third", attachments.getJSONObject(2).getString("fallback"));
+    }
+
+    @Test
+    public void publishAsyncIsDoneWhenBatchIsSent() throws Exception {
+        CoalescingSlackService.configure(true, 60, 2);
+        CoalescingSlackService service = new CoalescingSlackService("team", "token", "#builds");
+        service.setEndpoint(server.getEndpoint());
+
+        ListenableFuture<PublishResult> first = service.publishAsync("first", "good");
+        assertFalse(first.isDone());
+        ListenableFuture<PublishResult> second = service.publishAsync("second", "good");
+
+        assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+        assertTrue(second.get(10, TimeUnit.SECONDS).isSuccess());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void combinedPostIsLoggedWithEveryNotificationId() throws Exception {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Level level = NotificationLog.logger.getLevel();
+        NotificationLog.logger.setLevel(Level.FINE);
+        NotificationLog.logger.addHandler(handler);
+        try {
+            CoalescingSlackService.configure(true, 60, 2);
+            CoalescingSlackService service = new CoalescingSlackService("team", "token", "#builds");
+            service.setEndpoint(server.getEndpoint());
+
+            String first = NotificationLog.begin();
+            service.publish("first", "good");
+            NotificationLog.end();
+            String second = NotificationLog.begin();
+            ListenableFuture<PublishResult> sent = service.publishAsync("second", "good");
+            NotificationLog.end();
+
+            assertTrue(sent.get(10, TimeUnit.SECONDS).isSuccess());
+            assertTrue(messages.toString(), messages.toString().contains("posted id=" + first + "," + second + " "));
+        } finally {
+            NotificationLog.logger.removeHandler(handler);
+            NotificationLog.logger.setLevel(level);
+        }
+    }
+
+    @Test
+    public void batchIsSentWhenWindowEnds() throws Exception {
+        CoalescingSlackService.configure(true, 1, 20);
+        CoalescingSlackService service = new CoalescingSlackService("team", "token", "#one,#two");
+        service.setEndpoint(server.getEndpoint());
+
+        service.publish("first", "good");
+        service.publish("second", "good");
+
+        List<JSONObject> payloads = server.awaitPayloads(2);
+        assertEquals(2, payloads.size());
+        assertEquals(2, payloads.get(0).getJSONArray("attachments").length());
+        assertEquals(2, payloads.get(1).getJSONArray("attachments").length());
+    }
+}
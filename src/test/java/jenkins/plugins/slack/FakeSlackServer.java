@@ -0,0 +1,223 @@
+package jenkins.plugins.slack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a Slack incoming webhook that records every payload it accepts.
+ *
+ * Besides failing the next requests on demand, it can delay every response, fail a share of the requests at
+ * random, and answer 429 like Slack does once more than a given number of requests arrive within a second.
+ */
+public class FakeSlackServer {
+
+    private final HttpServer server;
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final List<JSONObject> payloads = new ArrayList<JSONObject>();
+    private final List<Long> arrivals = new ArrayList<Long>();
+    private final Queue<int[]> failures = new LinkedList<int[]>();
+    private final Random random;
+    private int requests;
+    private long minLatencyMillis;
+    private long maxLatencyMillis;
+    private double errorRate;
+    private int errorStatus = 500;
+    private int requestsPerSecond;
+    private int retryAfterSeconds = 1;
+    private long window;
+    private int windowRequests;
+    private int rateLimitedCount;
+
+    public FakeSlackServer() throws IOException {
+        this(new Random());
+    }
+
+    /**
+     * @param random decides the latencies and which requests fail, seed it to repeat a run
+     */
+    public FakeSlackServer(Random random) throws IOException {
+        this.random = random;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new WebhookHandler());
+        server.setExecutor(threads);
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/services/hooks/jenkins-ci";
+    }
+
+    public StandardSlackService newService(String teamDomain, String token, String room) {
+        StandardSlackService service = new StandardSlackService(teamDomain, token, room);
+        service.setEndpoint(getEndpoint());
+        return service;
+    }
+
+    /**
+     * Rejects the next request with the given status, and a Retry-After header unless retryAfterSeconds is negative.
+     */
+    public synchronized void failNext(int status, int retryAfterSeconds) {
+        failures.add(new int[] {status, retryAfterSeconds});
+    }
+
+    /**
+     * Delays every response by a random time between the two, inclusive.
+     */
+    public synchronized void setLatency(long minMillis, long maxMillis) {
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Fails the given share of requests, between 0 and 1, with the status and no Retry-After.
+     */
+    public synchronized void setErrorRate(double errorRate, int status) {
+        this.errorRate = errorRate;
+        this.errorStatus = status;
+    }
+
+    /**
+     * Answers 429 with the Retry-After to the requests beyond the given number in a second, 0 accepts any number.
+     */
+    public synchronized void setRateLimit(int requestsPerSecond, int retryAfterSeconds) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public synchronized int getRequestCount() {
+        return requests;
+    }
+
+    /**
+     * @return how many requests were answered 429 by the rate limit of {@link #setRateLimit}
+     */
+    public synchronized int getRateLimitedCount() {
+        return rateLimitedCount;
+    }
+
+    /**
+     * @return the {@link System#nanoTime} at which each accepted payload arrived, in the order of {@link #getPayloads}
+     */
+    public synchronized List<Long> getArrivals() {
+        return new ArrayList<Long>(arrivals);
+    }
+
+    public synchronized List<JSONObject> getPayloads() {
+        return new ArrayList<JSONObject>(payloads);
+    }
+
+    /**
+     * Waits up to ten seconds for at least the given number of payloads.
+     */
+    public synchronized List<JSONObject> awaitPayloads(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (payloads.size() < count && System.currentTimeMillis() < deadline) {
+            wait(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        return getPayloads();
+    }
+
+    public synchronized List<String> getChannels() {
+        List<String> channels = new ArrayList<String>();
+        for (JSONObject payload : payloads) {
+            channels.add(payload.getString("channel"));
+        }
+        return channels;
+    }
+
+    public void stop() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+
+    /**
+     * @return the failure to answer with, or null if the payload was accepted
+     */
+    private synchronized int[] record(JSONObject payload) {
+        long now = System.nanoTime();
+        requests++;
+        int[] failure = failures.poll();
+        if (failure == null && requestsPerSecond > 0) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(now);
+            if (second != window) {
+                window = second;
+                windowRequests = 0;
+            }
+            if (++windowRequests > requestsPerSecond) {
+                rateLimitedCount++;
+                failure = new int[] {429, retryAfterSeconds};
+            }
+        }
+        if (failure == null && errorRate > 0 && random.nextDouble() < errorRate) {
+            failure = new int[] {errorStatus, -1};
+        }
+        if (failure == null) {
+            payloads.add(payload);
+            arrivals.add(now);
+            notifyAll();
+        }
+        return failure;
+    }
+
+    private synchronized long nextLatencyMillis() {
+        if (maxLatencyMillis <= 0) {
+            return 0;
+        }
+        return minLatencyMillis + (long) (random.nextDouble() * (maxLatencyMillis - minLatencyMillis + 1));
+    }
+
+    static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private class WebhookHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            String body = read(exchange.getRequestBody());
+            if (body.startsWith("payload=")) {
+                body = URLDecoder.decode(body.substring("payload=".length()), "UTF-8");
+            }
+            int[] failure = record(new JSONObject(body));
+            long latency = nextLatencyMillis();
+            if (latency > 0) {
+                try {
+                    Thread.sleep(latency);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            byte[] response = (failure == null ? "ok" : "failed").getBytes("UTF-8");
+            if (failure != null && failure[1] >= 0) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(failure[1]));
+            }
+            exchange.sendResponseHeaders(failure == null ? 200 : failure[0], response.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(response);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class JsonPayloadTest {
+
+    private static JSONObject parse(JsonPayload payload) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        payload.writeRequest(out);
+        assertEquals(payload.getContentLength(), out.size());
+        return new JSONObject(out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writesChannelAndAttachments() throws Exception {
+        byte[] attachments = JsonPayload.attachments(Arrays.asList(
+                new SlackMessage("Success", "good"), new SlackMessage("Changes:\n- fix", "warning")));
+        JSONObject payload = parse(new JsonPayload("#general", attachments));
+
+        assertEquals("#general", payload.getString("channel"));
+        JSONArray sent = payload.getJSONArray("attachments");
+        assertEquals(2, sent.length());
+        JSONObject second = sent.getJSONObject(1);
+        assertEquals("Changes:\n- fix", second.getString("fallback"));
+        assertEquals("warning", second.getString("color"));
+        JSONObject field = second.getJSONArray("fields").getJSONObject(0);
+        assertFalse(field.getBoolean("short"));
+        assertEquals("Changes:\n- fix", field.getString("value"));
+    }
+
+    @Test
+    public void escapesLikeOrgJson() throws Exception {
+        String text = "quote \" backslash \\ </script> tab\t cr\r bell\u0007 \u0085 caf\u00e9 \u2028 \u20ac "
+                + "\ud83d\ude00 <@U123|bob> &amp;";
+        byte[] attachments = JsonPayload.attachments(Collections.singletonList(new SlackMessage(text, "danger")));
+        JSONObject payload = parse(new JsonPayload("#caf\u00e9", attachments));
+
+        assertEquals("#caf\u00e9", payload.getString("channel"));
+        assertEquals(text, payload.getJSONArray("attachments").getJSONObject(0).getString("fallback"));
+        assertEquals(JSONObject.quote(text).replace("\\b", "\\u0008").replace("\\f", "\\u000c"),
+                new String(attachments, "UTF-8").split(",\"color\"")[0].substring("[{\"fallback\":".length()));
+    }
+
+    @Test
+    public void leavesOutMissingValues() throws Exception {
+        byte[] attachments = JsonPayload.attachments(Collections.singletonList(new SlackMessage("text", null)));
+        JSONObject attachment = parse(new JsonPayload("#a", attachments)).getJSONArray("attachments").getJSONObject(0);
+        assertFalse(attachment.has("color"));
+        assertEquals("text", attachment.getString("fallback"));
+    }
+
+    @Test
+    public void isSentAsJson() {
+        assertEquals("application/json; charset=UTF-8", new JsonPayload("#a", new byte[] {'[', ']'}).getContentType());
+    }
+}
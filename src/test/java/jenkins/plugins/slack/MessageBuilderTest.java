@@ -0,0 +1,28 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MessageBuilderTest {
+
+    private static String escape(String string) {
+        StringBuilder out = new StringBuilder("> ");
+        ActiveNotifier.MessageBuilder.escape(out, string);
+        return out.toString();
+    }
+
+    @Test
+    public void escapesLikeReplacingEachCharacter() {
+        String[] inputs = {"", "plain", "<@U123>", "a & b", "&amp;", "&&<<>>", "x<y>z&", "<", "tail&"};
+        for (String input : inputs) {
+            String expected = input.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            assertEquals(input, "> " + expected, escape(input));
+        }
+    }
+
+    @Test
+    public void keepsStringWithNothingToEscape() {
+        assertEquals("> Back to normal", escape("Back to normal"));
+    }
+}
@@ -0,0 +1,92 @@
+package jenkins.plugins.slack;
+
+import jenkins.plugins.slack.NotificationDispatcher.Priority;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationDispatcherTest {
+
+    private NotificationDispatcher dispatcher;
+    private CountDownLatch workerBusy;
+    private CountDownLatch releaseWorker;
+    private List<String> ran;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = new NotificationDispatcher("test", 1, 2);
+        ran = Collections.synchronizedList(new ArrayList<String>());
+        workerBusy = new CountDownLatch(1);
+        releaseWorker = new CountDownLatch(1);
+        // occupy the only worker so that everything else stays queued
+        dispatcher.dispatch(new Runnable() {
+            public void run() {
+                workerBusy.countDown();
+                try {
+                    releaseWorker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, Priority.NORMAL);
+        assertTrue(workerBusy.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        dispatcher.dispatch(record("started", done), Priority.LOW);
+        dispatcher.dispatch(record("failure", done), Priority.HIGH);
+        releaseWorker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[failure, started]", ran.toString());
+    }
+
+    @Test
+    public void fullQueueDropsLowestPriority() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        assertTrue(dispatcher.dispatch(record("started", done), Priority.LOW));
+        assertTrue(dispatcher.dispatch(record("success", done), Priority.NORMAL));
+        assertTrue(dispatcher.dispatch(record("failure", done), Priority.HIGH));
+        assertFalse(dispatcher.dispatch(record("another start", done), Priority.LOW));
+        assertEquals(2, dispatcher.getDroppedCount());
+        releaseWorker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[failure, success]", ran.toString());
+    }
+
+    @Test
+    public void failingTaskDoesNotKillWorker() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("boom");
+            }
+        }, Priority.HIGH);
+        dispatcher.dispatch(record("after failure", done), Priority.NORMAL);
+        releaseWorker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, dispatcher.getFailedCount());
+    }
+
+    private Runnable record(final String name, final CountDownLatch done) {
+        return new Runnable() {
+            public void run() {
+                ran.add(name);
+                done.countDown();
+            }
+        };
+    }
+}
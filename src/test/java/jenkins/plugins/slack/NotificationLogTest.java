@@ -0,0 +1,122 @@
+package jenkins.plugins.slack;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationLogTest {
+
+    private final List<LogRecord> records = new ArrayList<LogRecord>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private Level level;
+
+    @Before
+    public void setUp() {
+        level = NotificationLog.logger.getLevel();
+        NotificationLog.logger.setLevel(Level.ALL);
+        NotificationLog.logger.addHandler(handler);
+    }
+
+    @After
+    public void tearDown() {
+        NotificationLog.logger.removeHandler(handler);
+        NotificationLog.logger.setLevel(level);
+    }
+
+    @Test
+    public void redactShouldMaskTheToken() {
+        assertEquals("https://foo.slack.com/services/hooks/jenkins-ci?token=****",
+                NotificationLog.redact("https://foo.slack.com/services/hooks/jenkins-ci?token=secret"));
+        assertEquals("http://localhost/hook?token=****&channel=x",
+                NotificationLog.redact("http://localhost/hook?token=secret&channel=x"));
+    }
+
+    @Test
+    public void formatShouldWriteKeyValuePairs() {
+        assertEquals("post id=7 channel=#general status=200",
+                NotificationLog.format("post", "7", "channel", "#general", "status", 200));
+    }
+
+    @Test
+    public void disabledLevelShouldNotLog() {
+        NotificationLog.logger.setLevel(Level.WARNING);
+        NotificationLog.log(Level.FINE, "post", "1", "channel", "#general");
+
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void sampledEventShouldLogOnceEverySampleEvery() {
+        NotificationLog.Sampled sampled = new NotificationLog.Sampled("post-failed");
+        for (int i = 0; i < NotificationLog.SAMPLE_EVERY + 1; i++) {
+            sampled.log(Level.WARNING, "1", null, "channel", "#general");
+        }
+
+        assertEquals(2, records.size());
+        assertEquals(NotificationLog.SAMPLE_EVERY + 1, sampled.getCount());
+    }
+
+    @Test
+    public void postShouldBeLoggedWithoutTheToken() {
+        StandardSlackService service = new StandardSlackService("foo", "secret", "#general");
+        service.setTransport(new SlackTransport() {
+            @Override
+            String getId() {
+                return "fake";
+            }
+
+            @Override
+            ListenableFuture<Response> post(String url, JsonPayload payload) {
+                return Futures.immediateFuture(new Response(200, "ok", null));
+            }
+        });
+        String id = NotificationLog.begin();
+        try {
+            assertTrue(service.post("message", "good").isSuccess());
+        } finally {
+            NotificationLog.end();
+        }
+
+        assertEquals(2, records.size());
+        for (LogRecord record : records) {
+            assertTrue(record.getMessage(), record.getMessage().contains(" id=" + id + " "));
+            assertFalse(record.getMessage(), record.getMessage().contains("secret"));
+        }
+    }
+
+    @Test
+    public void threadShouldKeepItsNotificationId() {
+        String id = NotificationLog.begin();
+        try {
+            assertEquals(id, NotificationLog.currentId());
+        } finally {
+            NotificationLog.end();
+        }
+        assertEquals(NotificationLog.NO_NOTIFICATION, NotificationLog.currentId());
+    }
+}
@@ -0,0 +1,264 @@
+package jenkins.plugins.slack;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Outbox outbox;
+
+    @After
+    public void tearDown() {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void appendedEntriesAreDeliveredInOrderPerChannel() throws Exception {
+        RecordingSender sender = new RecordingSender(5);
+        outbox = Outbox.open(folder.getRoot(), sender, Outbox.SEGMENT_BYTES);
+        for (int i = 0; i < 5; i++) {
+            outbox.append(entry("#builds", "message " + i));
+        }
+
+        assertTrue(sender.await());
+        assertEquals("[message 0, message 1, message 2, message 3, message 4]", sender.texts().toString());
+    }
+
+    @Test
+    public void unacknowledgedEntriesAreDeliveredAfterRestart() throws Exception {
+        final CountDownLatch stuck = new CountDownLatch(1);
+        outbox = Outbox.open(folder.getRoot(), new Outbox.Sender() {
+            public ListenableFuture<Boolean> send(OutboxEntry entry) {
+                SettableFuture<Boolean> sent = SettableFuture.create();
+                if (entry.getMessages().get(0).getText().equals("delivered")) {
+                    sent.set(true);
+                } else {
+                    stuck.countDown();
+                }
+                return sent;
+            }
+        }, Outbox.SEGMENT_BYTES);
+        outbox.append(entry("#builds", "delivered"));
+        outbox.append(entry("#builds", "pending"));
+        assertTrue(stuck.await(10, TimeUnit.SECONDS));
+        outbox.close();
+
+        RecordingSender sender = new RecordingSender(1);
+        outbox = Outbox.open(folder.getRoot(), sender, Outbox.SEGMENT_BYTES);
+
+        assertTrue(sender.await());
+        Thread.sleep(200);
+        assertEquals("[pending]", sender.texts().toString());
+        OutboxEntry redelivered = sender.entries.get(0);
+        assertEquals("team", redelivered.getTeamDomain());
+        assertEquals("#builds", redelivered.getRoom());
+        assertEquals("42", redelivered.getNotificationId());
+    }
+
+    @Test
+    public void acknowledgedSegmentsAreDeleted() throws Exception {
+        RecordingSender sender = new RecordingSender(20);
+        outbox = Outbox.open(folder.getRoot(), sender, 100);
+        for (int i = 0; i < 20; i++) {
+            outbox.append(entry("#builds", "message " + i));
+        }
+        assertTrue(sender.await());
+        for (int i = 0; i < 100 && outbox.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        outbox.sync();
+
+        assertEquals(1, segments().length);
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(20, outbox.getAcknowledgedCount());
+    }
+
+    @Test
+    public void segmentsAreDeletedBehindAStuckChannel() throws Exception {
+        final CountDownLatch delivered = new CountDownLatch(20);
+        outbox = Outbox.open(folder.getRoot(), new Outbox.Sender() {
+            public ListenableFuture<Boolean> send(OutboxEntry entry) {
+                SettableFuture<Boolean> sent = SettableFuture.create();
+                if (!entry.getRoom().equals("#stuck")) {
+                    sent.set(true);
+                    delivered.countDown();
+                }
+                return sent;
+            }
+        }, 100);
+        outbox.append(entry("#stuck", "never"));
+        for (int i = 0; i < 20; i++) {
+            outbox.append(entry("#builds", "message " + i));
+        }
+        assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        outbox.sync();
+
+        // the stuck entry's segment and the one being written
+        assertEquals(2, segments().length);
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void entriesOlderThanMaxAgeAreDeadLettered() throws Exception {
+        final CountDownLatch tried = new CountDownLatch(1);
+        outbox = Outbox.open(folder.getRoot(), new Outbox.Sender() {
+            public ListenableFuture<Boolean> send(OutboxEntry entry) {
+                SettableFuture<Boolean> sent = SettableFuture.create();
+                sent.set(false);
+                tried.countDown();
+                return sent;
+            }
+        }, Outbox.SEGMENT_BYTES);
+        outbox.append(new OutboxEntry("team", "token", "#dead", Collections.singletonList(new SlackMessage("old", "good")),
+                System.currentTimeMillis() - Outbox.MAX_AGE_MILLIS, "1"));
+        assertTrue(tried.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        assertEquals(1, outbox.getDeadLetteredCount());
+        assertEquals(0, outbox.getPendingCount());
+        assertTrue(new File(folder.getRoot(), "dead-letters.log").length() > 0);
+    }
+
+    @Test
+    public void segmentsRolledWhileSyncingAreKept() throws Exception {
+        outbox = Outbox.open(folder.getRoot(), new Outbox.Sender() {
+            public ListenableFuture<Boolean> send(OutboxEntry entry) {
+                SettableFuture<Boolean> sent = SettableFuture.create();
+                if (!entry.getRoom().equals("#stuck")) {
+                    sent.set(true);
+                }
+                return sent;
+            }
+        }, 100);
+        final int count = 400;
+        Thread appender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        outbox.append(entry(i % 4 == 0 ? "#stuck" : "#builds", "message " + i));
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        appender.start();
+        while (appender.isAlive()) {
+            outbox.sync();
+        }
+        outbox.close();
+
+        RecordingSender sender = new RecordingSender(0);
+        outbox = Outbox.open(folder.getRoot(), sender, 100);
+        List<String> stuck = new ArrayList<String>();
+        for (int i = 0; i < 1000 && stuck.size() < count / 4; i++) {
+            Thread.sleep(10);
+            stuck.clear();
+            synchronized (sender.entries) {
+                for (OutboxEntry entry : sender.entries) {
+                    if (entry.getRoom().equals("#stuck")) {
+                        stuck.add(entry.getMessages().get(0).getText());
+                    }
+                }
+            }
+        }
+
+        assertEquals(count / 4, stuck.size());
+    }
+
+    @Test
+    public void failedEntriesAreDeadLetteredWithoutTheirToken() throws Exception {
+        final CountDownLatch tried = new CountDownLatch(2);
+        outbox = Outbox.open(folder.getRoot(), new Outbox.Sender() {
+            public ListenableFuture<Boolean> send(OutboxEntry entry) {
+                tried.countDown();
+                if (entry.getRoom().equals("#throws")) {
+                    throw new IllegalStateException("broken");
+                }
+                SettableFuture<Boolean> sent = SettableFuture.create();
+                sent.setException(new IllegalStateException("failed"));
+                return sent;
+            }
+        }, Outbox.SEGMENT_BYTES);
+        outbox.append(entry("#throws", "thrown"));
+        outbox.append(entry("#fails", "failed"));
+        assertTrue(tried.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && outbox.getPendingCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, outbox.getDeadLetteredCount());
+        assertEquals(0, outbox.getPendingCount());
+        String deadLetters = new String(Files.toByteArray(new File(folder.getRoot(), "dead-letters.log")), "UTF-8");
+        assertTrue(deadLetters.contains("#throws"));
+        assertFalse(deadLetters.contains("token"));
+    }
+
+    private String[] segments() {
+        return folder.getRoot().list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith("segment-");
+            }
+        });
+    }
+
+    private static OutboxEntry entry(String room, String text) {
+        return new OutboxEntry("team", "token", room, Collections.singletonList(new SlackMessage(text, "good")), "42");
+    }
+
+    private static class RecordingSender implements Outbox.Sender {
+        private final List<OutboxEntry> entries = Collections.synchronizedList(new ArrayList<OutboxEntry>());
+        private final CountDownLatch latch;
+
+        RecordingSender(int expected) {
+            latch = new CountDownLatch(expected);
+        }
+
+        public ListenableFuture<Boolean> send(OutboxEntry entry) {
+            entries.add(entry);
+            latch.countDown();
+            SettableFuture<Boolean> sent = SettableFuture.create();
+            sent.set(true);
+            return sent;
+        }
+
+        boolean await() throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+
+        List<String> texts() {
+            List<String> texts = new ArrayList<String>();
+            synchronized (entries) {
+                for (OutboxEntry entry : entries) {
+                    texts.add(entry.getMessages().get(0).getText());
+                }
+            }
+            return texts;
+        }
+    }
+}
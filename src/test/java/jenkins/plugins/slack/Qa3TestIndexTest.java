@@ -0,0 +1,64 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Qa3TestIndexTest {
+
+    private Qa3TestIndex index;
+
+    @Before
+    public void setUp() {
+        index = new Qa3TestIndex();
+        index.markLoaded();
+    }
+
+    @Test
+    public void defaultPatternMatchesQa3TestsButNotExperimental() {
+        assertTrue(index.matches("Checkout_QA3_Tests"));
+        assertTrue(index.matches("qa3_tests"));
+        assertFalse(index.matches("Responsive_Experimental_QA3_Tests"));
+        assertFalse(index.matches("Copy_Artifact_To_Prod"));
+    }
+
+    @Test
+    public void followsResultOfLatestBuild() {
+        index.onCompleted("Search_QA3_Tests", 1, Result.FAILURE);
+        index.onCompleted("Checkout_QA3_Tests", 7, Result.FAILURE);
+        index.onCompleted("Copy_Artifact_To_Prod", 3, Result.FAILURE);
+        assertEquals(Arrays.asList("Checkout_QA3_Tests", "Search_QA3_Tests"), index.getBrokenJobs());
+
+        index.onCompleted("Checkout_QA3_Tests", 8, Result.SUCCESS);
+        index.onCompleted("Checkout_QA3_Tests", 6, Result.FAILURE);
+        assertEquals(Collections.singletonList("Search_QA3_Tests"), index.getBrokenJobs());
+    }
+
+    @Test
+    public void followsRenamesAndDeletes() {
+        index.onCompleted("Search_QA3_Tests", 1, Result.FAILURE);
+        index.onCompleted("Checkout_QA3_Tests", 1, Result.FAILURE);
+
+        index.onRenamed("Search_QA3_Tests", "Search_Tests_Retired");
+        index.onDeleted("Checkout_QA3_Tests");
+
+        assertTrue(index.getBrokenJobs().isEmpty());
+    }
+
+    @Test
+    public void configuredPatternReplacesDefault() {
+        index.configure("smoke-.*");
+        index.markLoaded();
+        index.onCompleted("smoke-login", 1, Result.FAILURE);
+        index.onCompleted("Checkout_QA3_Tests", 1, Result.FAILURE);
+
+        assertEquals(Collections.singletonList("smoke-login"), index.getBrokenJobs());
+    }
+}
@@ -0,0 +1,49 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void burstIsNotDelayed() {
+        RateLimiter limiter = new RateLimiter("test", 1.0, 3, 0);
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(0, limiter.getDelayedCount());
+    }
+
+    @Test
+    public void postsBeyondBurstAreQueuedAtRate() {
+        RateLimiter limiter = new RateLimiter("test", 2.0, 1, 0);
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(SECOND / 2, limiter.reserve(0));
+        assertEquals(SECOND, limiter.reserve(0));
+        assertEquals(2, limiter.getDelayedCount());
+        assertEquals(1500, limiter.getTotalWaitMillis());
+        assertEquals(1000, limiter.getMaxWaitMillis());
+    }
+
+    @Test
+    public void bucketRefillsOverTime() {
+        RateLimiter limiter = new RateLimiter("test", 1.0, 2, 0);
+        limiter.reserve(0);
+        limiter.reserve(0);
+        assertEquals(0, limiter.reserve(SECOND));
+        assertEquals(0, limiter.reserve(3 * SECOND));
+        assertEquals(0, limiter.reserve(3 * SECOND));
+        assertEquals(SECOND, limiter.reserve(3 * SECOND));
+    }
+
+    @Test
+    public void limiterIsSharedPerWebhook() {
+        assertSame(RateLimiter.forWebhook("team", "token"), RateLimiter.forWebhook("team", "token"));
+    }
+}
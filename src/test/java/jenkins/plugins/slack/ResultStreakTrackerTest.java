@@ -0,0 +1,122 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResultStreakTrackerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void tracksStreakAndItsFirstBuild() {
+        ResultStreakTracker.Streak streak = ResultStreakTracker.Streak.NONE
+                .next(1, Result.SUCCESS, "alice")
+                .next(2, Result.FAILURE, "bob")
+                .next(3, Result.FAILURE, "carol");
+        assertEquals(Result.FAILURE, streak.getResult());
+        assertEquals(2, streak.getLength());
+        assertEquals(2, streak.getFirstBuild());
+        assertEquals("bob", streak.getFirstUserId());
+        assertEquals(Result.FAILURE, streak.getResultBefore(3));
+        assertEquals(Result.FAILURE, streak.getResultBefore(4));
+
+        streak = streak.next(4, Result.SUCCESS, null);
+        assertEquals(Result.FAILURE, streak.getResultBefore(4));
+        assertEquals(1, streak.getLength());
+        assertNull(streak.getFirstUserId());
+    }
+
+    @Test
+    public void ignoresAbortedAndOutOfOrderBuilds() {
+        ResultStreakTracker.Streak streak = ResultStreakTracker.Streak.NONE
+                .next(1, Result.FAILURE, null)
+                .next(3, Result.SUCCESS, null);
+        assertSame(streak, streak.next(4, Result.ABORTED, null));
+        ResultStreakTracker.Streak late = streak.next(2, Result.FAILURE, null);
+        assertEquals(3, late.getLastBuild());
+        assertEquals(Result.SUCCESS, late.getResult());
+        assertEquals(1, late.getLength());
+        assertEquals(Result.SUCCESS, late.getResultBefore(5));
+        assertEquals(Result.FAILURE, late.getResultBefore(3));
+        assertEquals(Result.FAILURE, late.getResultBefore(2));
+    }
+
+    @Test
+    public void lateBuildIsComparedWithTheBuildBeforeIt() {
+        // #11 fails, then #10 completes as a success: #10 is not back to normal, #9 succeeded too
+        ResultStreakTracker.Streak streak = ResultStreakTracker.Streak.NONE
+                .next(9, Result.SUCCESS, null)
+                .next(11, Result.FAILURE, null)
+                .next(10, Result.SUCCESS, null);
+        assertEquals(Result.SUCCESS, streak.getResultBefore(10));
+        assertEquals(Result.FAILURE, streak.getResult());
+        assertEquals(Result.SUCCESS, streak.getResultBefore(11));
+    }
+
+    @Test
+    public void lateBuildOlderThanRememberedBuildsIsUnknown() {
+        ResultStreakTracker.Streak streak = ResultStreakTracker.Streak.NONE;
+        for (int i = 1; i <= ResultStreakTracker.Streak.RECENT_BUILDS + 5; i++) {
+            streak = streak.next(i + 10, Result.FAILURE, null);
+        }
+        assertNull(streak.getResultBefore(3));
+        assertSame(streak, streak.next(3, Result.SUCCESS, null));
+    }
+
+    @Test
+    public void formatRoundTrips() {
+        ResultStreakTracker.Streak streak = ResultStreakTracker.Streak.NONE
+                .next(41, Result.UNSTABLE, null)
+                .next(42, Result.FAILURE, "user with spaces");
+        ResultStreakTracker.Streak parsed = ResultStreakTracker.Streak.parse(streak.format());
+        assertEquals(streak.format(), parsed.format());
+        assertEquals("user with spaces", parsed.getFirstUserId());
+        assertEquals(Result.UNSTABLE, parsed.getResultBefore(42));
+
+        assertEquals(ResultStreakTracker.Streak.NONE.format(),
+                ResultStreakTracker.Streak.parse(ResultStreakTracker.Streak.NONE.format()).format());
+    }
+
+    @Test
+    public void persistsStreakInFile() throws Exception {
+        File file = new File(folder.getRoot(), ResultStreakTracker.FILE_NAME);
+        ResultStreakTracker tracker = new ResultStreakTracker();
+        tracker.load("job", file, 0, null);
+        tracker.record("job", 1, Result.FAILURE, "bob");
+        tracker.record("job", 2, Result.FAILURE, "carol");
+        assertNull(ResultStreakTracker.read(file));
+        tracker.load("job", file, 2, null);
+
+        ResultStreakTracker.Streak read = ResultStreakTracker.read(file);
+        assertEquals(2, read.getLastBuild());
+        assertEquals(2, read.getLength());
+        assertEquals("bob", read.getFirstUserId());
+        assertNull(ResultStreakTracker.read(new File(folder.getRoot(), "missing")));
+    }
+
+    @Test
+    public void recordsBeforeLoadAreReplayed() throws Exception {
+        File file = new File(folder.getRoot(), ResultStreakTracker.FILE_NAME);
+        ResultStreakTracker tracker = new ResultStreakTracker();
+        assertNull(tracker.record("job", 1, Result.FAILURE, "bob"));
+        assertNull(tracker.record("job", 2, Result.SUCCESS, "carol"));
+
+        ResultStreakTracker.Streak first = tracker.load("job", file, 1, null);
+        assertEquals(1, first.getLastBuild());
+        assertEquals(Result.FAILURE, first.getResult());
+
+        ResultStreakTracker.Streak third = tracker.record("job", 3, Result.SUCCESS, null);
+        assertEquals(2, third.getLength());
+        assertEquals(2, third.getFirstBuild());
+        assertEquals(2, ResultStreakTracker.read(file).getLastBuild());
+    }
+}
@@ -0,0 +1,46 @@
+package jenkins.plugins.slack;
+
+import jenkins.plugins.slack.PublishResult.ChannelResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(5, 1000, 60000, new Random(42));
+
+    @Test
+    public void onlyTemporaryFailuresAreRetried() {
+        assertTrue(policy.shouldRetry(ChannelResult.response("#a", 429, ""), 1));
+        assertTrue(policy.shouldRetry(ChannelResult.response("#a", 503, ""), 1));
+        assertTrue(policy.shouldRetry(ChannelResult.error("#a", new IOException()), 1));
+        assertFalse(policy.shouldRetry(ChannelResult.response("#a", 404, ""), 1));
+        assertFalse(policy.shouldRetry(ChannelResult.response("#a", 200, "ok"), 1));
+        assertFalse(policy.shouldRetry(ChannelResult.response("#a", 503, ""), 5));
+    }
+
+    @Test
+    public void delayIsJitteredBelowExponentialCeiling() {
+        for (int attempts = 1; attempts <= 10; attempts++) {
+            long ceiling = Math.min(60000, 1000L << (attempts - 1));
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.getDelayMillis(attempts, 0);
+                assertTrue(delay >= 0 && delay < ceiling);
+            }
+        }
+        assertTrue(policy.getDelayMillis(100, 0) < 60000);
+    }
+
+    @Test
+    public void delayIsNeverShorterThanRetryAfter() {
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getDelayMillis(1, 5000) >= 5000);
+        }
+        assertEquals(5000, new RetryPolicy(5, 0, 0, new Random()).getDelayMillis(3, 5000));
+    }
+}
@@ -0,0 +1,84 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlackMetricsTest {
+
+    private FakeSlackServer server;
+    private RetryPolicy retryPolicy;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSlackServer();
+        RateLimiter.configure(1000, 1000);
+        CircuitBreaker.clear();
+        SlackMetrics.get().clear();
+        retryPolicy = RetryPolicy.get();
+        RetryPolicy.set(new RetryPolicy(3, 10, 100, new Random()));
+    }
+
+    @After
+    public void tearDown() {
+        RetryPolicy.set(retryPolicy);
+        server.stop();
+    }
+
+    @Test
+    public void histogramReportsBucketOfPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(700));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getP50Millis());
+        assertEquals("capped by the maximum", 700, histogram.getP95Millis());
+        assertEquals(700, histogram.getMaxMillis());
+        assertEquals(72, histogram.getMeanMillis());
+    }
+
+    @Test
+    public void countsPostsPerChannel() throws Exception {
+        server.failNext(503, -1);
+        StandardSlackService service = server.newService("metrics", "token", "#one");
+        assertTrue(service.post("message", "good").isSuccess());
+        server.failNext(404, -1);
+        service.post("message", "good");
+
+        SlackMetrics.Destination destination = SlackMetrics.get().forDestination("metrics", "#one");
+        assertEquals(2, destination.getEnqueuedCount());
+        assertEquals(1, destination.getSentCount());
+        assertEquals(1, destination.getFailedCount());
+        assertEquals(1, destination.getRetriedCount());
+        assertEquals(3, destination.getHttp().getCount());
+
+        JSONObject json = SlackMetrics.get().toJson();
+        assertEquals(1L, ((Number) json.getJSONObject("total").get("sent")).longValue());
+        assertEquals("#one", json.getJSONArray("destinations").getJSONObject(0).getString("channel"));
+    }
+
+    @Test
+    public void countsPostsRejectedByCircuitBreaker() {
+        StandardSlackService service = server.newService("metrics", "token", "#two");
+        CircuitBreaker breaker = service.getCircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+            breaker.onFailure();
+        }
+        service.post("message", "good");
+
+        SlackMetrics.Destination destination = SlackMetrics.get().forDestination("metrics", "#two");
+        assertEquals(1, destination.getRejectedCount());
+        assertEquals(0, destination.getHttp().getCount());
+    }
+}
@@ -1,5 +1,7 @@
 package jenkins.plugins.slack;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import hudson.model.Descriptor;
 import hudson.util.FormValidation;
 import junit.framework.TestCase;
@@ -10,6 +12,8 @@ import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 @RunWith(Parameterized.class)
 public class SlackNotifierTest extends TestCase {
@@ -67,6 +71,16 @@ public class SlackNotifierTest extends TestCase {
             return response;
         }
 
+        public ListenableFuture<PublishResult> publishAsync(String message, String color) {
+            return publishAll(Collections.singletonList(new SlackMessage(message, color)));
+        }
+
+        public ListenableFuture<PublishResult> publishAll(List<SlackMessage> messages) {
+            PublishResult result = new PublishResult();
+            result.add(PublishResult.ChannelResult.response("room", response ? 200 : 500, null));
+            return Futures.immediateFuture(result);
+        }
+
         public void setResponse(boolean response) {
             this.response = response;
         }
@@ -0,0 +1,74 @@
+package jenkins.plugins.slack;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SlackServiceRegistryTest {
+
+    private CountingNotifier notifier;
+
+    @Before
+    public void setUp() {
+        SlackServiceRegistry.invalidate();
+        notifier = new CountingNotifier();
+    }
+
+    @Test
+    public void sameSettingsShareService() {
+        SlackService first = notifier.getSlackService("team", "token", "#builds");
+        SlackService second = notifier.getSlackService("team", "token", "#builds");
+
+        assertSame(first, second);
+        assertEquals(1, notifier.created);
+    }
+
+    @Test
+    public void missingSettingsResolveToGlobalOnes() {
+        SlackService first = notifier.getSlackService(null, null, null);
+        SlackService second = notifier.getSlackService("globalTeam", "globalToken", "#global");
+
+        assertSame(first, second);
+        assertNotSame(first, notifier.getSlackService("team", "token", "#global"));
+    }
+
+    @Test
+    public void invalidateDropsServices() {
+        SlackService first = notifier.getSlackService("team", "token", "#builds");
+        SlackServiceRegistry.invalidate();
+
+        assertNotSame(first, notifier.getSlackService("team", "token", "#builds"));
+        assertEquals(2, notifier.created);
+    }
+
+    @Test
+    public void leastRecentlyUsedServiceIsEvicted() {
+        SlackService kept = notifier.getSlackService("team", "token", "#0");
+        for (int i = 1; i <= SlackServiceRegistry.CAPACITY; i++) {
+            notifier.getSlackService("team", "token", "#" + i);
+            notifier.getSlackService("team", "token", "#0");
+        }
+
+        assertEquals(SlackServiceRegistry.CAPACITY, SlackServiceRegistry.size());
+        assertSame(kept, notifier.getSlackService("team", "token", "#0"));
+        notifier.getSlackService("team", "token", "#1");
+        assertEquals(SlackServiceRegistry.CAPACITY + 2, notifier.created);
+    }
+
+    private static class CountingNotifier extends SlackNotifierStub {
+        private int created;
+
+        CountingNotifier() {
+            super("globalTeam", "globalToken", "#global", "http://localhost:8080/", "jenkins");
+        }
+
+        @Override
+        public SlackService newSlackService(String teamDomain, String token, String projectRoom) {
+            created++;
+            return new StandardSlackService(teamDomain, token, projectRoom);
+        }
+    }
+}
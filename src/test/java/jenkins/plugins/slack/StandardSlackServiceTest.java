@@ -1,11 +1,45 @@
 package jenkins.plugins.slack;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import jenkins.plugins.slack.StandardSlackService;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class StandardSlackServiceTest {
 
+    private FakeSlackServer server;
+    private RetryPolicy retryPolicy;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSlackServer();
+        RateLimiter.configure(1000, 1000);
+        CircuitBreaker.clear();
+        retryPolicy = RetryPolicy.get();
+        RetryPolicy.set(new RetryPolicy(3, 10, 100, new Random()));
+    }
+
+    @After
+    public void tearDown() {
+        RetryPolicy.set(retryPolicy);
+        server.stop();
+    }
+
     /**
      * Publish should generally not rethrow exceptions, or it will cause a build job to fail at end.
      */
@@ -33,4 +67,152 @@ public class StandardSlackServiceTest {
         StandardSlackService service = new StandardSlackService("tinyspeck", "token", "#general");
         service.publish("message");
     }
+
+    @Test
+    public void publishShouldPostToEveryChannel() {
+        StandardSlackService service = server.newService("foo", "token", "#one, #two;#three #four");
+        PublishResult result = service.post("message", "good");
+
+        assertTrue(result.isSuccess());
+        assertEquals(4, result.getChannelResults().size());
+        assertEquals(new HashSet<String>(Arrays.asList("#one", "#two", "#three", "#four")),
+                new HashSet<String>(server.getChannels()));
+    }
+
+    @Test
+    public void failingChannelShouldNotHideOtherResults() {
+        StandardSlackService service = server.newService("foo", "token", "#one,#two");
+        service.setEndpoint("http://127.0.0.1:1/unreachable");
+        PublishResult result = service.post("message", "good");
+
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.getFailures().size());
+        assertEquals(-1, result.getChannelResult("#two").getStatusCode());
+    }
+
+    @Test
+    public void serverErrorShouldBeRetried() {
+        server.failNext(503, -1);
+        StandardSlackService service = server.newService("foo", "token", "#general");
+        PublishResult result = service.post("message", "good");
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getChannelResult("#general").getAttempts());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void retryShouldWaitForRetryAfter() {
+        server.failNext(429, 1);
+        StandardSlackService service = server.newService("foo", "token", "#general");
+        long start = System.currentTimeMillis();
+        PublishResult result = service.post("message", "good");
+
+        assertTrue(result.isSuccess());
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(2, result.getChannelResult("#general").getAttempts());
+    }
+
+    @Test
+    public void serviceRetryPolicyShouldOverrideTheGlobalOne() {
+        server.failNext(503, -1);
+        StandardSlackService service = server.newService("foo", "token", "#general");
+        service.setRetryPolicy(Outbox.SlackSender.SINGLE_ATTEMPT);
+        PublishResult result = service.post("message", "good");
+
+        assertFalse(result.isSuccess());
+        assertEquals(503, result.getChannelResult("#general").getStatusCode());
+        assertEquals(1, result.getChannelResult("#general").getAttempts());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void clientErrorShouldNotBeRetried() {
+        server.failNext(404, -1);
+        StandardSlackService service = server.newService("foo", "token", "#general");
+        PublishResult result = service.post("message", "good");
+
+        assertFalse(result.isSuccess());
+        assertEquals(404, result.getChannelResult("#general").getStatusCode());
+        assertEquals(1, result.getChannelResult("#general").getAttempts());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void asyncTransportShouldPostToEveryChannel() {
+        AsyncHttpTransport transport = new AsyncHttpTransport();
+        try {
+            server.failNext(503, -1);
+            StandardSlackService service = server.newService("foo", "token", "#one,#two,#three");
+            service.setTransport(transport);
+            PublishResult result = service.post("message", "good");
+
+            assertTrue(result.isSuccess());
+            assertEquals(new HashSet<String>(Arrays.asList("#one", "#two", "#three")),
+                    new HashSet<String>(server.getChannels()));
+            assertEquals(4, server.getRequestCount());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void publishAllShouldPostOneMessagePerChannel() throws Exception {
+        server.failNext(503, -1);
+        StandardSlackService service = server.newService("foo", "token", "#one,#two");
+        PublishResult result = service.publishAll(Arrays.asList(new SlackMessage("first", "good"),
+                new SlackMessage("second", "danger"))).get();
+
+        assertTrue(result.isSuccess());
+        assertEquals(3, server.getRequestCount());
+        List<JSONObject> payloads = server.getPayloads();
+        assertEquals(2, payloads.size());
+        for (JSONObject payload : payloads) {
+            JSONArray attachments = payload.getJSONArray("attachments");
+            assertEquals(2, attachments.length());
+            assertEquals("first", attachments.getJSONObject(0).getString("fallback"));
+            assertEquals("good", attachments.getJSONObject(0).getString("color"));
+            assertEquals("second", attachments.getJSONObject(1).getString("fallback"));
+            assertEquals("danger", attachments.getJSONObject(1).getString("color"));
+        }
+    }
+
+    @Test
+    public void transportFailureShouldBeRetried() {
+        final AtomicInteger posts = new AtomicInteger();
+        StandardSlackService service = new StandardSlackService("foo", "token", "#general");
+        service.setTransport(new SlackTransport() {
+            @Override
+            String getId() {
+                return "fake";
+            }
+
+            @Override
+            ListenableFuture<Response> post(String url, JsonPayload payload) {
+                if (posts.incrementAndGet() == 1) {
+                    return Futures.immediateFailedFuture(new IOException("connection reset"));
+                }
+                return Futures.immediateFuture(new Response(200, "ok", null));
+            }
+        });
+        PublishResult result = service.post("message", "good");
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getChannelResult("#general").getAttempts());
+        assertEquals(2, posts.get());
+    }
+
+    @Test
+    public void openCircuitBreakerShouldFailFast() {
+        StandardSlackService service = server.newService("foo", "token", "#general");
+        CircuitBreaker breaker = service.getCircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+            breaker.onFailure();
+        }
+        PublishResult result = service.post("message", "good");
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getChannelResult("#general").getError() instanceof CircuitBreaker.OpenException);
+        assertEquals(0, server.getRequestCount());
+    }
 }